@@ -0,0 +1,107 @@
+package org;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Zipf sampler based on Vose's alias method. The alias table is built once per
+ * (domain, alpha) and shared between samplers; every value then costs one SplitMix64 draw:
+ * the high 32 bits pick a column and the low 32 bits decide between the column and its alias.
+ */
+public class AliasZipfSampler implements ZipfSampler {
+    private static final Map<String, Table> TABLES = new ConcurrentHashMap<>();
+
+    static final class Table {
+        final int domain;
+        final long[] threshold; // accept column k if the low 32 bits are below threshold[k]
+        final int[] alias;
+
+        Table(int domain, double alpha) {
+            if (domain < 1) {
+                throw new IllegalArgumentException("Domain must be positive but got " + domain);
+            }
+            this.domain = domain;
+            this.threshold = new long[domain];
+            this.alias = new int[domain];
+
+            double[] scaled = new double[domain];
+            double norm = 0;
+            for (int k = 0; k < domain; k++) {
+                scaled[k] = Math.pow(k + 1, -alpha);
+                norm += scaled[k];
+            }
+            ArrayDeque<Integer> small = new ArrayDeque<>();
+            ArrayDeque<Integer> large = new ArrayDeque<>();
+            for (int k = 0; k < domain; k++) {
+                scaled[k] = scaled[k] * domain / norm;
+                if (scaled[k] < 1.0) {
+                    small.push(k);
+                } else {
+                    large.push(k);
+                }
+            }
+            while (!small.isEmpty() && !large.isEmpty()) {
+                int s = small.pop();
+                int l = large.pop();
+                threshold[s] = (long) (scaled[s] * 0x1p32);
+                alias[s] = l;
+                scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+                if (scaled[l] < 1.0) {
+                    small.push(l);
+                } else {
+                    large.push(l);
+                }
+            }
+            // Leftovers are 1.0 up to rounding error: always accept the column itself
+            while (!large.isEmpty()) {
+                int l = large.pop();
+                threshold[l] = 1L << 32;
+                alias[l] = l;
+            }
+            while (!small.isEmpty()) {
+                int s = small.pop();
+                threshold[s] = 1L << 32;
+                alias[s] = s;
+            }
+        }
+
+        /**
+         * Maps one uniformly random 64-bit word to a Zipf value in [1, domain].
+         */
+        int sample(long bits) {
+            int column = (int) (((bits >>> 32) * domain) >>> 32);
+            return (bits & 0xFFFFFFFFL) < threshold[column] ? column + 1 : alias[column] + 1;
+        }
+    }
+
+    private final Table table;
+    private final SplitMix64 random;
+
+    public AliasZipfSampler(int domain, double alpha, long seed) {
+        this.table = table(domain, alpha);
+        this.random = new SplitMix64(seed);
+    }
+
+    static Table table(int domain, double alpha) {
+        return TABLES.computeIfAbsent(domain + ":" + alpha, key -> new Table(domain, alpha));
+    }
+
+    public int sample() {
+        return table.sample(random.nextLong());
+    }
+
+    @Override
+    public void fill(long[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = table.sample(random.nextLong());
+        }
+    }
+
+    @Override
+    public void fill(int[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = table.sample(random.nextLong());
+        }
+    }
+}
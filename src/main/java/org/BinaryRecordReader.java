@@ -0,0 +1,131 @@
+package org;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped reader for files written by BinaryRecordWriter. The file is mapped in segments
+ * of whole records (at most 1 GB each), so record i is read at a computed offset without
+ * parsing anything before it.
+ */
+public class BinaryRecordReader implements Closeable {
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final String[] columns;
+    private final int numFields;
+    private final int fieldWidth;
+    private final int recordBytes;
+    private final long recordCount;
+    private final long recordsPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    public BinaryRecordReader(String fileName) throws IOException {
+        channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(BinaryRecordWriter.SCHEMA_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        byte[] magic = new byte[BinaryRecordWriter.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, BinaryRecordWriter.MAGIC)) {
+            channel.close();
+            throw new IOException("Not a binary record file: " + fileName);
+        }
+        int version = header.getInt();
+        if (version != BinaryRecordWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported binary record file version " + version + ": " + fileName);
+        }
+        fieldWidth = header.getInt();
+        numFields = header.getInt();
+        int dataOffset = header.getInt();
+        recordCount = header.getLong();
+        int schemaLength = header.getInt();
+        ByteBuffer schema = ByteBuffer.allocate(schemaLength);
+        readFully(schema, BinaryRecordWriter.SCHEMA_OFFSET);
+        columns = new String(schema.array(), StandardCharsets.UTF_8).split(",");
+
+        recordBytes = numFields * fieldWidth;
+        recordsPerSegment = Math.max(1, MAX_SEGMENT_BYTES / recordBytes);
+        int numSegments = (int) ((recordCount + recordsPerSegment - 1) / recordsPerSegment);
+        segments = new MappedByteBuffer[numSegments];
+        for (int s = 0; s < numSegments; s++) {
+            long first = s * recordsPerSegment;
+            long records = Math.min(recordsPerSegment, recordCount - first);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * recordBytes, records * recordBytes);
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    public static boolean isBinary(String fileName) {
+        return fileName.endsWith(".bin");
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public int getNumFields() {
+        return numFields;
+    }
+
+    public int getFieldWidth() {
+        return fieldWidth;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getLong(long row, int field) {
+        MappedByteBuffer segment = segments[(int) (row / recordsPerSegment)];
+        int offset = (int) (row % recordsPerSegment) * recordBytes + field * fieldWidth;
+        return fieldWidth == Integer.BYTES ? segment.getInt(offset) : segment.getLong(offset);
+    }
+
+    public int getInt(long row, int field) {
+        return Math.toIntExact(getLong(row, field));
+    }
+
+    /**
+     * Copies fields [0, out.length) of a record; out may be shorter than the record.
+     */
+    public void readRecord(long row, long[] out) {
+        MappedByteBuffer segment = segments[(int) (row / recordsPerSegment)];
+        int offset = (int) (row % recordsPerSegment) * recordBytes;
+        for (int field = 0; field < out.length; field++) {
+            out[field] = fieldWidth == Integer.BYTES ? segment.getInt(offset) : segment.getLong(offset);
+            offset += fieldWidth;
+        }
+    }
+
+    public void readRecord(long row, int[] out, int outOffset, int numValues) {
+        MappedByteBuffer segment = segments[(int) (row / recordsPerSegment)];
+        int offset = (int) (row % recordsPerSegment) * recordBytes;
+        for (int field = 0; field < numValues; field++) {
+            out[outOffset + field] = fieldWidth == Integer.BYTES ? segment.getInt(offset) : Math.toIntExact(segment.getLong(offset));
+            offset += fieldWidth;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary record file header");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,208 @@
+package org;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the fixed-width binary record format read by BinaryRecordReader.
+ * <p>
+ * Layout (little endian): an 8 byte magic "OMNIREC1", int version, int field width (4 or 8),
+ * int number of fields, int data offset, long record count, int schema length and the schema
+ * as comma separated UTF-8 column names, padded to a multiple of 8 bytes. Records follow at the
+ * data offset; record i starts at dataOffset + i * numFields * fieldWidth. The record count is
+ * patched in when the writer is closed.
+ */
+public class BinaryRecordWriter implements RecordEncoder {
+    static final byte[] MAGIC = "OMNIREC1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int RECORD_COUNT_OFFSET = 24;
+    static final int SCHEMA_OFFSET = 36;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8; // Largest array a ByteBuffer can have
+
+    private final FileChannel channel;
+    private final int numFields;
+    private final int fieldWidth;
+    private ByteBuffer buffer;
+    private long recordCount;
+
+    private BinaryRecordWriter(FileChannel channel, ByteBuffer buffer, int numFields, int fieldWidth) {
+        this.channel = channel;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.numFields = numFields;
+        this.fieldWidth = fieldWidth;
+    }
+
+    public static BinaryRecordWriter open(String fileName, String[] columns, int fieldWidth) throws IOException {
+        if (fieldWidth != Integer.BYTES && fieldWidth != Long.BYTES) {
+            throw new IllegalArgumentException("Field width must be 4 or 8 bytes but got " + fieldWidth);
+        }
+        File parentDir = new File(fileName).getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        FileChannel channel = FileChannel.open(new File(fileName).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        BinaryRecordWriter writer = new BinaryRecordWriter(channel, ByteBuffer.allocateDirect(CsvRecordEncoder.DEFAULT_BUFFER_SIZE),
+                columns.length, fieldWidth);
+        writer.writeHeader(columns);
+        return writer;
+    }
+
+    public int getNumFields() {
+        return numFields;
+    }
+
+    public int getFieldWidth() {
+        return fieldWidth;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void writeHeader(String[] columns) throws IOException {
+        byte[] schema = String.join(",", columns).getBytes(StandardCharsets.UTF_8);
+        int dataOffset = (SCHEMA_OFFSET + schema.length + 7) & ~7;
+        ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC)
+                .putInt(VERSION)
+                .putInt(fieldWidth)
+                .putInt(numFields)
+                .putInt(dataOffset)
+                .putLong(0L)
+                .putInt(schema.length)
+                .put(schema);
+        header.clear();
+        writeFully(header);
+    }
+
+    /**
+     * Writes id, values..., sign as one record.
+     */
+    @Override
+    public void writeRecord(long[] record, int sign) throws IOException {
+        checkFields(record.length + 1);
+        ensureCapacity(numFields * fieldWidth);
+        for (long value : record) {
+            putField(value);
+        }
+        putField(sign);
+        recordCount++;
+    }
+
+    @Override
+    public void writeRecord(int[] record, int from, int to, int sign) throws IOException {
+        checkFields(to - from + 1);
+        ensureCapacity(numFields * fieldWidth);
+        for (int i = from; i < to; i++) {
+            putField(record[i]);
+        }
+        putField(sign);
+        recordCount++;
+    }
+
+    /**
+     * Writes all numFields values of one record.
+     */
+    public void writeFields(long[] values) throws IOException {
+        checkFields(values.length);
+        ensureCapacity(numFields * fieldWidth);
+        for (long value : values) {
+            putField(value);
+        }
+        recordCount++;
+    }
+
+    @Override
+    public RecordEncoder newChunk(int expectedRecords) {
+        return new BinaryRecordWriter(null, ByteBuffer.allocate((int) Math.min(MAX_CAPACITY, (long) Math.max(expectedRecords, 1) * numFields * fieldWidth)),
+                numFields, fieldWidth);
+    }
+
+    @Override
+    public void append(RecordEncoder chunk) throws IOException {
+        BinaryRecordWriter other = (BinaryRecordWriter) chunk;
+        if (other.numFields != numFields || other.fieldWidth != fieldWidth) {
+            throw new IllegalArgumentException("Chunk layout does not match: " + other.numFields + "x" + other.fieldWidth +
+                    " vs " + numFields + "x" + fieldWidth);
+        }
+        ByteBuffer bytes = other.buffer.duplicate().flip();
+        if (channel != null && bytes.remaining() > buffer.remaining()) {
+            flush();
+            writeFully(bytes);
+        } else {
+            ensureCapacity(bytes.remaining());
+            buffer.put(bytes);
+        }
+        recordCount += other.recordCount;
+    }
+
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, recordCount);
+            channel.write(count, RECORD_COUNT_OFFSET);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void putField(long value) {
+        if (fieldWidth == Integer.BYTES) {
+            if (value != (int) value) {
+                throw new IllegalArgumentException("Value " + value + " does not fit a 4 byte field");
+            }
+            buffer.putInt((int) value);
+        } else {
+            buffer.putLong(value);
+        }
+    }
+
+    private void checkFields(int fields) {
+        if (fields != numFields) {
+            throw new IllegalArgumentException("Record has " + fields + " fields but the file schema has " + numFields);
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (channel != null) {
+            flush();
+            return;
+        }
+        if ((long) buffer.position() + bytes > MAX_CAPACITY) {
+            throw new IllegalStateException("In-memory binary chunk exceeds " + MAX_CAPACITY + " bytes");
+        }
+        ByteBuffer grown = ByteBuffer.allocate((int) Math.max(Math.min(MAX_CAPACITY, 2L * buffer.capacity()), buffer.position() + bytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,90 @@
+package org;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits an id range into fixed-size chunks and generates them on a thread pool.
+ * Every chunk gets its own seed, derived from a base seed and the chunk index only,
+ * and chunks are handed to the sink in chunk order. The output therefore only depends
+ * on the base seed and the chunk size, not on the number of threads or on scheduling.
+ */
+public class ChunkedDatasetGenerator {
+
+    public interface ChunkTask<T> {
+        T generate(long chunkIndex, long start, long end, long chunkSeed) throws IOException;
+    }
+
+    public interface ChunkSink<T> {
+        void accept(T chunk) throws IOException;
+    }
+
+    private final int numThreads;
+    private final int chunkSize;
+
+    public ChunkedDatasetGenerator(int numThreads, int chunkSize) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be positive but got " + numThreads);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive but got " + chunkSize);
+        }
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Generates records [0, numRecords) with the given task. At most 2 * numThreads chunks are
+     * in flight, so memory stays bounded while the sink writes the previous chunks.
+     */
+    public <T> void generate(long numRecords, long baseSeed, ChunkTask<T> task, ChunkSink<T> sink) throws IOException {
+        long numChunks = (numRecords + chunkSize - 1) / chunkSize;
+        int maxInFlight = 2 * numThreads;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        ArrayDeque<Future<T>> inFlight = new ArrayDeque<>(maxInFlight);
+        try {
+            long nextChunk = 0;
+            while (nextChunk < numChunks || !inFlight.isEmpty()) {
+                while (nextChunk < numChunks && inFlight.size() < maxInFlight) {
+                    long chunkIndex = nextChunk++;
+                    long start = chunkIndex * chunkSize;
+                    long end = Math.min(numRecords, start + chunkSize);
+                    long seed = chunkSeed(baseSeed, chunkIndex);
+                    inFlight.add(executor.submit(() -> task.generate(chunkIndex, start, end, seed)));
+                }
+                sink.accept(await(inFlight.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating chunk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Chunk generation failed", e.getCause());
+        }
+    }
+
+    /**
+     * SplitMix64 finalizer over (baseSeed, chunkIndex): neighbouring chunks get unrelated seeds.
+     */
+    public static long chunkSeed(long baseSeed, long chunkIndex) {
+        return SplitMix64.mix64(baseSeed + (chunkIndex + 1) * SplitMix64.GOLDEN_GAMMA);
+    }
+}
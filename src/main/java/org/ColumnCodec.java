@@ -0,0 +1,244 @@
+package org;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Primitive storage of one CSV column plus its text codec: fields are parsed straight into an int,
+ * long or byte array and formatted back into a StringBuilder, without a String or a box per value.
+ * Rows are set in order, each exactly once; empty unquoted fields are null, kept in a bitset.
+ */
+public abstract class ColumnCodec {
+    private long[] nulls;
+
+    protected ColumnCodec(int capacity) {
+        this.nulls = new long[(capacity + 63) >>> 6];
+    }
+
+    public static ColumnCodec of(PrimitiveInsertStore.ColumnType type, int capacity) {
+        return switch (type) {
+            case INTEGER -> new IntCodec(capacity);
+            case BIGINT -> new LongCodec(capacity);
+            case VARCHAR -> new VarcharCodec(capacity);
+        };
+    }
+
+    /**
+     * Stores a CSV field (unquoted already) in the row.
+     */
+    public void parse(int row, CharSequence field, boolean quoted) {
+        if (field.length() == 0 && !quoted) {
+            setNull(row);
+        } else {
+            set(row, field);
+        }
+    }
+
+    protected abstract void set(int row, CharSequence field);
+
+    public void setNull(int row) {
+        nulls[row >>> 6] |= 1L << row;
+    }
+
+    public boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public void grow(int capacity) {
+        nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+    }
+
+    /**
+     * Appends the value as a CSV field, nothing for null.
+     */
+    public abstract void append(int row, StringBuilder out);
+
+    /**
+     * The value as DuckDB's getString returns it, null for null.
+     */
+    public abstract String value(int row);
+
+    // Bounds of the field without surrounding whitespace, as Integer.parseInt(field.trim())
+    private static int trimStart(CharSequence field) {
+        int start = 0;
+        while (start < field.length() && field.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence field) {
+        int end = field.length();
+        while (end > 0 && field.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    public static class IntCodec extends ColumnCodec {
+        private int[] values;
+
+        IntCodec(int capacity) {
+            super(capacity);
+            this.values = new int[capacity];
+        }
+
+        public int get(int row) {
+            return values[row];
+        }
+
+        @Override
+        protected void set(int row, CharSequence field) {
+            values[row] = Integer.parseInt(field, trimStart(field), Math.max(trimStart(field), trimEnd(field)), 10);
+        }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void append(int row, StringBuilder out) {
+            if (!isNull(row)) {
+                out.append(values[row]);
+            }
+        }
+
+        @Override
+        public String value(int row) {
+            return isNull(row) ? null : Integer.toString(values[row]);
+        }
+    }
+
+    public static class LongCodec extends ColumnCodec {
+        private long[] values;
+
+        LongCodec(int capacity) {
+            super(capacity);
+            this.values = new long[capacity];
+        }
+
+        @Override
+        protected void set(int row, CharSequence field) {
+            values[row] = Long.parseLong(field, trimStart(field), Math.max(trimStart(field), trimEnd(field)), 10);
+        }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        public void append(int row, StringBuilder out) {
+            if (!isNull(row)) {
+                out.append(values[row]);
+            }
+        }
+
+        @Override
+        public String value(int row) {
+            return isNull(row) ? null : Long.toString(values[row]);
+        }
+    }
+
+    // UTF-8 bytes of all rows back to back, row r ends at ends[r] and starts where row r - 1 ended
+    public static class VarcharCodec extends ColumnCodec {
+        private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+
+        private int[] ends;
+        private byte[] bytes = new byte[1 << 12];
+        private int size;
+
+        VarcharCodec(int capacity) {
+            super(capacity);
+            this.ends = new int[capacity];
+        }
+
+        @Override
+        protected void set(int row, CharSequence field) {
+            byte[] value = field.toString().getBytes(StandardCharsets.UTF_8);
+            if ((long) size + value.length > MAX_BYTES) {
+                throw new IllegalStateException("String column exceeds " + MAX_BYTES + " bytes");
+            }
+            if (size + value.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_BYTES, Math.max(size + value.length, 2L * bytes.length)));
+            }
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+            ends[row] = size;
+        }
+
+        @Override
+        public void setNull(int row) {
+            super.setNull(row);
+            ends[row] = size; // Empty, keeps the end offsets increasing
+        }
+
+        @Override
+        public void grow(int capacity) {
+            super.grow(capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+
+        private int start(int row) {
+            return row == 0 ? 0 : ends[row - 1];
+        }
+
+        @Override
+        public void append(int row, StringBuilder out) {
+            if (isNull(row)) {
+                return;
+            }
+            int start = start(row);
+            int end = ends[row];
+            if (start == end) {
+                out.append("\"\""); // Empty string, not null
+                return;
+            }
+            boolean quote = false;
+            for (int i = start; i < end; i++) {
+                byte b = bytes[i];
+                if (b < 0) {
+                    // Not ASCII: decode, and quote the decoded value if needed
+                    appendField(value(row), out);
+                    return;
+                }
+                quote |= b == ',' || b == '"' || b == '\n' || b == '\r';
+            }
+            if (quote) {
+                appendField(value(row), out);
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                out.append((char) bytes[i]);
+            }
+        }
+
+        private static void appendField(String value, StringBuilder out) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.append(value);
+                return;
+            }
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    out.append('"');
+                }
+                out.append(c);
+            }
+            out.append('"');
+        }
+
+        @Override
+        public String value(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            int start = start(row);
+            return new String(bytes, start, ends[row] - start, StandardCharsets.UTF_8);
+        }
+    }
+}
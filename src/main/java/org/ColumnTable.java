@@ -0,0 +1,81 @@
+package org;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * The rows of one CSV file (with header) in one primitive ColumnCodec per column, for GenericMixer and
+ * PrimitiveInsertStore. Fields are split by CsvFieldTokenizer; missing trailing fields and empty
+ * unquoted fields are null, extra fields are ignored (like DuckDB's COPY with STRICT_MODE FALSE).
+ */
+public class ColumnTable {
+    private final ColumnCodec[] columns;
+    private int capacity;
+    private int numRows;
+
+    private ColumnTable(PrimitiveInsertStore.ColumnType[] types, int capacity) {
+        this.capacity = capacity;
+        this.columns = new ColumnCodec[types.length];
+        for (int c = 0; c < types.length; c++) {
+            columns[c] = ColumnCodec.of(types[c], capacity);
+        }
+    }
+
+    public static ColumnTable read(String filePath, PrimitiveInsertStore.ColumnType... types) throws IOException {
+        ColumnTable table = new ColumnTable(types, 1 << 10);
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath), 1 << 16)) {
+            String line = reader.readLine(); // Header
+            CsvFieldTokenizer fields = new CsvFieldTokenizer();
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    table.addLine(fields.reset(line));
+                }
+            }
+        }
+        return table;
+    }
+
+    private void addLine(CsvFieldTokenizer fields) {
+        if (numRows == capacity) {
+            capacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * numRows);
+            for (ColumnCodec column : columns) {
+                column.grow(capacity);
+            }
+        }
+        int row = numRows++;
+        int column = 0;
+        while (column < columns.length && fields.next()) {
+            columns[column++].parse(row, fields.field(), fields.isQuoted());
+        }
+        while (column < columns.length) {
+            columns[column++].setNull(row);
+        }
+    }
+
+    public int size() {
+        return numRows;
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    public ColumnCodec column(int column) {
+        return columns[column];
+    }
+
+    /**
+     * Appends the columns of the row as CSV fields, each followed by a comma, nulls as nullText.
+     */
+    public void appendRow(int row, StringBuilder out, String nullText) {
+        for (ColumnCodec column : columns) {
+            if (column.isNull(row)) {
+                out.append(nullText);
+            } else {
+                column.append(row, out);
+            }
+            out.append(',');
+        }
+    }
+}
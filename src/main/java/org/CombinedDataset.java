@@ -0,0 +1,199 @@
+package org;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the combined generator output (syntheticDataset_*.csv or .bin: the residu, then every noise
+ * record as insert and as delete) for the mixers, so they can run without the split_sets files.
+ * Rows are classified like the splitter does: residu if sign == 1 and id < 2^sizeFactor,
+ * noise insert if sign == 1 otherwise; deletes only repeat the inserts.
+ */
+public class CombinedDataset {
+    // prefix numAttrs domain sizeFactor datasetResiduSize numZipfianAttrs zipfAlpha numUniformAttrs perc
+    public static final Pattern FILE_PATTERN = Pattern.compile("syntheticDataset_[^_]+_[^_]+_([^_]+)_[^_]+_([^_]+_[^_]+_[^_]+_([^_]+))\\.(csv|bin)");
+
+    public interface RowConsumer {
+        // The row (id, attrs..., sign) is reused between calls
+        void accept(int[] row) throws IOException;
+    }
+
+    /**
+     * Pull-based reading, for mixers that take rows from several files in turn.
+     */
+    public interface RowCursor extends Closeable {
+        // The next row (id, attrs..., sign), reused between calls; null at the end
+        int[] next() throws IOException;
+    }
+
+    private final String filePath;
+    private final String suffix;
+    private final double perc;
+
+    private CombinedDataset(String filePath, Matcher matcher) {
+        this.filePath = filePath;
+        this.suffix = "_" + matcher.group(1) + "_" + matcher.group(2);
+        this.perc = Double.parseDouble(matcher.group(3));
+    }
+
+    /**
+     * Returns the combined dataset for a file name, or null if it is not one (e.g. a queries file).
+     */
+    public static CombinedDataset of(String filePath) {
+        String name = filePath.substring(filePath.lastIndexOf('/') + 1);
+        Matcher matcher = FILE_PATTERN.matcher(name);
+        return matcher.matches() ? new CombinedDataset(filePath, matcher) : null;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    // Same suffix as the split_sets files: _{sizeFactor}_{numZipf}_{alpha}_{numUniform}_{perc}
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public double getPerc() {
+        return perc;
+    }
+
+    public void forEachRow(RowConsumer consumer) throws IOException {
+        forEachRow(filePath, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Streams the first limit rows of any CSV (with or without header) or binary record file,
+     * e.g. the split_sets files, without loading it.
+     */
+    public static void forEachRow(String filePath, long limit, RowConsumer consumer) throws IOException {
+        try (RowCursor cursor = open(filePath, limit)) {
+            int[] row;
+            while ((row = cursor.next()) != null) {
+                consumer.accept(row);
+            }
+        }
+    }
+
+    /**
+     * Cursor over the first limit rows of any CSV (with or without header) or binary record file.
+     */
+    public static RowCursor open(String filePath, long limit) throws IOException {
+        if (BinaryRecordReader.isBinary(filePath)) {
+            BinaryRecordReader reader = new BinaryRecordReader(filePath);
+            long numRows = Math.min(limit, reader.getRecordCount());
+            int[] row = new int[reader.getNumFields()];
+            return new RowCursor() {
+                private long r;
+
+                @Override
+                public int[] next() {
+                    if (r == numRows) {
+                        return null;
+                    }
+                    reader.readRecord(r++, row, 0, row.length);
+                    return row;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    reader.close();
+                }
+            };
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(filePath), 1 << 16);
+        return new RowCursor() {
+            private int[] row;
+            private long numRows;
+
+            @Override
+            public int[] next() throws IOException {
+                String line;
+                while (numRows < limit && (line = reader.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("id")) {
+                        continue; // Header
+                    }
+                    if (row == null) {
+                        int numFields = 1;
+                        for (int i = 0; i < line.length(); i++) {
+                            if (line.charAt(i) == ',') numFields++;
+                        }
+                        row = new int[numFields];
+                    }
+                    parseRow(line, row);
+                    numRows++;
+                    return row;
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Cursor over the residu rows (sign 1, id below residuSize) of this file.
+     */
+    public RowCursor openResidu(long residuSize) throws IOException {
+        return filter(open(filePath, Long.MAX_VALUE), true, residuSize);
+    }
+
+    /**
+     * Cursor over the noise inserts (sign 1, id from residuSize on) of this file.
+     */
+    public RowCursor openNoiseInserts(long residuSize) throws IOException {
+        return filter(open(filePath, Long.MAX_VALUE), false, residuSize);
+    }
+
+    private static RowCursor filter(RowCursor cursor, boolean residu, long residuSize) {
+        return new RowCursor() {
+            @Override
+            public int[] next() throws IOException {
+                int[] row;
+                while ((row = cursor.next()) != null) {
+                    if (row[row.length - 1] == 1 && (row[0] < residuSize) == residu) {
+                        return row;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                cursor.close();
+            }
+        };
+    }
+
+    private static void parseRow(String line, int[] row) {
+        int field = 0;
+        int value = 0;
+        boolean negative = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ',') {
+                if (field == row.length - 1) {
+                    throw new IllegalArgumentException("Expected " + row.length + " fields: " + line);
+                }
+                row[field++] = negative ? -value : value;
+                value = 0;
+                negative = false;
+            } else if (c == '-') {
+                negative = true;
+            } else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            }
+        }
+        if (field != row.length - 1) {
+            throw new IllegalArgumentException("Expected " + row.length + " fields: " + line);
+        }
+        row[field] = negative ? -value : value;
+    }
+}
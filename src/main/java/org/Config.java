@@ -1,6 +1,7 @@
 package org;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -20,6 +21,63 @@ public class Config {
     public double zipfAlpha;
     public double[] perc;
 
+    // Chunked generation: records are produced in chunks of chunkSize, each with its own seed
+    // derived from seed and the chunk index, so the output does not depend on numThreads.
+    public boolean parallelGeneration = false;
+    public int numThreads = Runtime.getRuntime().availableProcessors();
+    public int chunkSize = 1 << 20;
+    public long seed = 0;
+    // Input bytes per parallel chunk in SplitInsertsAndDeletes (also uses numThreads)
+    public int splitChunkBytes = 1 << 25;
+
+    // "commons" (commons-math ZipfDistribution) or "alias" (AliasZipfSampler)
+    public String zipfSampler = "commons";
+
+    // "stream" (sequential samplers, the original generator) or "counter" (CounterRecordGenerator,
+    // values are a function of seed, id and attribute, so single records can be recomputed)
+    public String recordGenerator = "stream";
+
+    // Format written by the generators and the splitter: "csv" or "binary" (see BinaryRecordWriter)
+    public String outputFormat = RecordEncoder.FORMAT_CSV;
+    // Write split_sets/residu and split_sets/noise_inserts directly instead of the combined file
+    public boolean splitOutput = false;
+    // Generate residu and noise once for the largest perc and write a DatasetManifest per perc
+    public boolean sweepPerc = false;
+    // Exact query answers: "index" (PointQueryIndex, one scan) or "bitmap" (PositionBitmapIndex,
+    // saved next to the query file and reused by later query generations on the same dataset)
+    public String exactAnswerMode = "index";
+    // false: only generate queries, for an existing dataset (e.g. another numPredicates)
+    public boolean generateData = true;
+    // Pick the query records (and, in bitmap mode, build their position bitmaps) while generating the dataset
+    // without noise, instead of re-reading it; in a sweep from the shared residu
+    public boolean fusedQueries = false;
+    // Mixers read the combined syntheticDataset_* files instead of split_sets/residu and noise_inserts
+    public boolean mixFromCombined = false;
+    // Seed of the shuffle that orders the final stream
+    public long mixSeed = 42;
+    // "shuffle" (shuffled id list), "permutation" (FeistelPermutation over the slots, no list) or, in MixInMemory,
+    // "lifetime" (LifetimeStreamMixer: one forward pass, every delete a random lifetime after its insert) or
+    // "interleave" (InterleaveMixer: merges sequential reads of residu and noise, holds only the live noise)
+    public String mixOrder = "shuffle";
+    // Lifetimes of mixOrder "lifetime": "geometric", "uniform" or "fixed", with mean mixLifetimeMean positions
+    public String mixLifetime = "geometric";
+    public double mixLifetimeMean = 100000;
+    // > 0: MixInMemory shuffles through disk buckets in readFolder/tmp (ExternalShuffleMixer) within this budget;
+    // with mixOrder "permutation" it sort-merges the records to their permutation positions (SortMergeMixer)
+    public long mixMemoryBudgetMB = 0;
+    // Noise inserts of the CAIDA, TPC-DS and synthFromDisk mixers: "duckdb" (table with an index) or
+    // "memory" (PrimitiveInsertStore, lookups without SQL)
+    public String insertStore = "duckdb";
+    // Batches that can wait between two stages (fetch, format, write) of the DB mixers' pipeline (MixPipeline)
+    public int mixPipelineDepth = 2;
+    // MixInMemory formats the final stream in numThreads segments in parallel (ParallelMixer); same output
+    public boolean parallelMix = false;
+    // "dataset" (each mixer's own record layout) or "generic" (GenericMixer: columns by mixColumnTypes or the CSV
+    // header, stored and formatted by primitive ColumnCodecs) for the CAIDA, TPC-DS and synthFromDisk mixers
+    public String mixEngine = "dataset";
+    // Column types for mixEngine "generic" without the sign, e.g. ["INTEGER", "BIGINT", "VARCHAR"]; empty: inferred
+    public List<String> mixColumnTypes = new ArrayList<>();
+
 
     public String getInputFolder() {
         return readFolder + "/input/";
@@ -0,0 +1,63 @@
+package org;
+
+/**
+ * Record generator whose values are a pure function of (seed, id, attribute): a SplitMix64 hash of
+ * the three is mapped through the Zipf alias table or onto the uniform domain. Any record can be
+ * produced on its own, in any order and on any thread, without replaying the records before it.
+ * Residu ids [0, datasetSize) use zipfAlpha, noise ids use noiseAlpha, like the stream generator.
+ */
+public class CounterRecordGenerator {
+    private final long seed;
+    private final long datasetSize;
+    private final int numZipfianAttrs;
+    private final int numUniformAttrs;
+    private final int domain;
+    private final AliasZipfSampler.Table residuTable;
+    private final AliasZipfSampler.Table noiseTable;
+
+    public CounterRecordGenerator(long seed, long datasetSize, int numZipfianAttrs, int numUniformAttrs,
+                                  int domain, double zipfAlpha, double noiseAlpha) {
+        this.seed = seed;
+        this.datasetSize = datasetSize;
+        this.numZipfianAttrs = numZipfianAttrs;
+        this.numUniformAttrs = numUniformAttrs;
+        this.domain = domain;
+        this.residuTable = AliasZipfSampler.table(domain, zipfAlpha);
+        this.noiseTable = AliasZipfSampler.table(domain, noiseAlpha);
+    }
+
+    /**
+     * Fills record (length numAttrs + 1, id first) with the record of the given id.
+     */
+    public long[] fill(long[] record, long id) {
+        record[0] = id;
+        long key = recordKey(id);
+        AliasZipfSampler.Table table = id < datasetSize ? residuTable : noiseTable;
+        for (int j = 0; j < numZipfianAttrs; j++) {
+            record[1 + j] = table.sample(bits(key, j));
+        }
+        for (int j = numZipfianAttrs; j < numZipfianAttrs + numUniformAttrs; j++) {
+            record[1 + j] = ((bits(key, j) >>> 32) * domain) >>> 32; // [0, domain), like Random.nextInt(domain)
+        }
+        return record;
+    }
+
+    /**
+     * Value of one attribute (0-based) of the record with the given id.
+     */
+    public long value(long id, int attr) {
+        long bits = bits(recordKey(id), attr);
+        if (attr < numZipfianAttrs) {
+            return (id < datasetSize ? residuTable : noiseTable).sample(bits);
+        }
+        return ((bits >>> 32) * domain) >>> 32;
+    }
+
+    private long recordKey(long id) {
+        return SplitMix64.mix64(seed + (id + 1) * SplitMix64.GOLDEN_GAMMA);
+    }
+
+    private static long bits(long recordKey, int attr) {
+        return SplitMix64.mix64(recordKey + (attr + 1) * SplitMix64.GOLDEN_GAMMA);
+    }
+}
@@ -15,6 +15,22 @@ public class CreateDatasetAndQueries {
         Config config = mapper.readValue(new File(jsonFilePath), Config.class);
 
         SyntheticDataset residu = new SyntheticDataset(config);
+        if (!config.generateData) {
+            System.out.println("Generating queries for the existing dataset with no noise");
+            residu.synthDevQueryGenerator(0.0, config.sizeFactor, config.zipfAlpha);
+            return;
+        }
+        if (config.sweepPerc) {
+            System.out.println("Generating shared residu and noise for all percentages");
+            residu.synthDevSweepGenerator(config.perc, config.sizeFactor, config.zipfAlpha);
+            for (double p : config.perc) {
+                if (p == 0) {
+                    System.out.println("Generating queries for dataset with no noise");
+                    residu.synthDevQueryGenerator(p, config.sizeFactor, config.zipfAlpha);
+                }
+            }
+            return;
+        }
         for (double p : config.perc) {
             System.out.printf("Generating dataset with %.1f%% noise", p * 100);
             residu.synthDevDataGenerator(p, config.sizeFactor, config.zipfAlpha);
@@ -0,0 +1,66 @@
+package org;
+
+/**
+ * Splits CSV lines into fields, for the readers that take any CSV (ColumnTable, GenericMixer's schema
+ * inference): fields are separated by commas, a double-quoted field may hold commas and "" for a quote.
+ * One tokenizer is reset per line and reuses its field buffer, so a line costs no String per field.
+ */
+public class CsvFieldTokenizer {
+    private final StringBuilder field = new StringBuilder();
+    private String line = "";
+    private int position = 1;
+    private boolean quoted;
+
+    public CsvFieldTokenizer reset(String line) {
+        this.line = line;
+        this.position = 0;
+        return this;
+    }
+
+    /**
+     * Moves to the next field of the line, false if there is none. An empty line has one empty field.
+     */
+    public boolean next() {
+        if (position > line.length()) {
+            return false;
+        }
+        field.setLength(0);
+        int i = position;
+        quoted = i < line.length() && line.charAt(i) == '"';
+        if (quoted) {
+            i++;
+            while (i < line.length()) {
+                char c = line.charAt(i++);
+                if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    break;
+                } else {
+                    field.append(c);
+                }
+            }
+        }
+        int end = line.indexOf(',', i);
+        if (end < 0) {
+            end = line.length();
+        }
+        field.append(line, i, end);
+        position = end + 1;
+        return true;
+    }
+
+    /**
+     * The current field without its quotes; only valid until the next call to next or reset.
+     */
+    public CharSequence field() {
+        return field;
+    }
+
+    /**
+     * Whether the current field was quoted, which tells an empty string ("") from an empty field.
+     */
+    public boolean isQuoted() {
+        return quoted;
+    }
+}
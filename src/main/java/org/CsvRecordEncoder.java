@@ -0,0 +1,212 @@
+package org;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes comma separated integer records as ASCII straight into a reusable ByteBuffer.
+ * File encoders use a direct buffer that is flushed through a FileChannel; in-memory encoders
+ * (used for chunks generated on worker threads) grow a heap buffer instead. Lines end with '\n'.
+ */
+public class CsvRecordEncoder implements RecordEncoder {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+    private static final int MAX_LONG_DIGITS = 20; // 19 digits + sign
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8; // Largest array a ByteBuffer can have
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+
+    private CsvRecordEncoder(FileChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens (and truncates) a file for writing, creating parent directories if needed.
+     */
+    public static CsvRecordEncoder open(String fileName) throws IOException {
+        return open(fileName, DEFAULT_BUFFER_SIZE);
+    }
+
+    public static CsvRecordEncoder open(String fileName, int bufferSize) throws IOException {
+        File parentDir = new File(fileName).getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        FileChannel channel = FileChannel.open(new File(fileName).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new CsvRecordEncoder(channel, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    public static CsvRecordEncoder inMemory(int initialCapacity) {
+        return new CsvRecordEncoder(null, ByteBuffer.allocate(Math.max(initialCapacity, 64)));
+    }
+
+    /**
+     * Writes id, values..., sign as one line.
+     */
+    @Override
+    public void writeRecord(long[] record, int sign) throws IOException {
+        ensureCapacity((record.length + 1) * (MAX_LONG_DIGITS + 1));
+        for (long value : record) {
+            putLong(value);
+            buffer.put((byte) ',');
+        }
+        putLong(sign);
+        buffer.put((byte) '\n');
+    }
+
+    @Override
+    public void writeRecord(int[] record, int from, int to, int sign) throws IOException {
+        ensureCapacity((to - from + 1) * (MAX_LONG_DIGITS + 1));
+        for (int i = from; i < to; i++) {
+            putLong(record[i]);
+            buffer.put((byte) ',');
+        }
+        putLong(sign);
+        buffer.put((byte) '\n');
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensureCapacity(MAX_LONG_DIGITS);
+        putLong(value);
+    }
+
+    public void writeByte(char c) throws IOException {
+        ensureCapacity(1);
+        buffer.put((byte) c);
+    }
+
+    public void writeLine(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        write(bytes, 0, bytes.length);
+        writeByte('\n');
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (channel != null && length > buffer.capacity()) {
+            flush();
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+            return;
+        }
+        ensureCapacity(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Copies bytes [offset, offset + length) of src, e.g. lines of a memory-mapped input, without moving its position.
+     */
+    public void write(ByteBuffer src, int offset, int length) throws IOException {
+        if (channel != null && length > buffer.capacity()) {
+            flush();
+            writeFully(src.slice(offset, length));
+            return;
+        }
+        ensureCapacity(length);
+        buffer.put(buffer.position(), src, offset, length);
+        buffer.position(buffer.position() + length);
+    }
+
+    @Override
+    public RecordEncoder newChunk(int expectedRecords) {
+        return inMemory((int) Math.min(MAX_CAPACITY, 32L * expectedRecords));
+    }
+
+    /**
+     * Appends everything written to an in-memory encoder, e.g. a chunk produced on another thread.
+     */
+    @Override
+    public void append(RecordEncoder chunk) throws IOException {
+        ByteBuffer bytes = ((CsvRecordEncoder) chunk).buffer.duplicate().flip();
+        if (channel != null && bytes.remaining() > buffer.remaining()) {
+            flush();
+            writeFully(bytes);
+            return;
+        }
+        ensureCapacity(bytes.remaining());
+        buffer.put(bytes);
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (channel != null) {
+            flush();
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+        }
+        if ((long) buffer.position() + bytes > MAX_CAPACITY) {
+            throw new IllegalStateException("In-memory CSV chunk exceeds " + MAX_CAPACITY + " bytes");
+        }
+        int capacity = (int) Math.max(Math.min(MAX_CAPACITY, 2L * buffer.capacity()), buffer.position() + bytes);
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    // Writes the decimal digits back to front at their final positions; no String or char[] is created
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put("-9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int digits = digitCount(value);
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + (value % 10)));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        long bound = 10;
+        while (digits < 19 && value >= bound) {
+            digits++;
+            bound *= 10;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,61 @@
+package org;
+
+import java.io.*;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Describes one noise percentage of a sweep as a view over shared files: all records of the
+ * shared residu plus the first noiseRecords records of the shared noise inserts. Noise sets of
+ * smaller percentages are exact prefixes of larger ones, so they are generated only once.
+ */
+public class DatasetManifest {
+    public static final Pattern FILE_PATTERN = Pattern.compile("manifest(.*)\\.properties");
+
+    public String residuFile;
+    public String noiseInsertsFile;
+    public long residuRecords;
+    public long noiseRecords;
+    public double perc;
+
+    public DatasetManifest(String residuFile, long residuRecords, String noiseInsertsFile, long noiseRecords, double perc) {
+        this.residuFile = residuFile;
+        this.residuRecords = residuRecords;
+        this.noiseInsertsFile = noiseInsertsFile;
+        this.noiseRecords = noiseRecords;
+        this.perc = perc;
+    }
+
+    public static DatasetManifest read(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new BufferedReader(new FileReader(file))) {
+            properties.load(reader);
+        }
+        try {
+            return new DatasetManifest(
+                    properties.getProperty("residuFile"),
+                    Long.parseLong(properties.getProperty("residuRecords")),
+                    properties.getProperty("noiseInsertsFile"),
+                    Long.parseLong(properties.getProperty("noiseRecords")),
+                    Double.parseDouble(properties.getProperty("perc")));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IOException("Malformed manifest: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        File parentDir = file.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + parentDir.getAbsolutePath());
+        }
+        Properties properties = new Properties();
+        properties.setProperty("residuFile", residuFile);
+        properties.setProperty("residuRecords", String.valueOf(residuRecords));
+        properties.setProperty("noiseInsertsFile", noiseInsertsFile);
+        properties.setProperty("noiseRecords", String.valueOf(noiseRecords));
+        properties.setProperty("perc", String.valueOf(perc));
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            properties.store(writer, "Noise percentage " + perc + " over shared residu and noise files");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * String records of the residu without a String per field: a field that is a plain non-negative
+ * number (an id, a CAIDA IP or timestamp, a synthetic attribute) is kept as its long value, any other
+ * field as a code into one dictionary shared by all columns, so a repeated string (a salutation, a
+ * name, a country) is one String however often it occurs. Rows may differ in length, like the
+ * line.split(",") records they replace; the last field of a record (the sign) is not stored.
+ * Fields are turned back into text only when a record is written.
+ */
+public class DictionaryRecordStore {
+    private static final int MAX_DIGITS = 18; // Every 18 digit number fits in a long
+
+    private final Object2IntOpenHashMap<String> codes = new Object2IntOpenHashMap<>();
+    private final ArrayList<String> dictionary = new ArrayList<>();
+    private long[] fields = new long[1 << 12]; // A number as itself, a dictionary entry as -(code + 1)
+    private int[] rowEnds = new int[1 << 8];
+    private int size;
+    private int numFields;
+
+    public DictionaryRecordStore() {
+        codes.defaultReturnValue(-1);
+    }
+
+    /**
+     * Adds record[0 .. length - 2]; record[0] must be a plain integer id.
+     */
+    public void add(String[] record) {
+        if (record.length < 2) {
+            throw new IllegalArgumentException("Records need an id and a sign, got " + record.length + " fields");
+        }
+        long id = number(record[0]);
+        if (id < 0 || id > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Record id " + record[0] + " is not a plain integer");
+        }
+        if (size == rowEnds.length) {
+            rowEnds = Arrays.copyOf(rowEnds, (int) Math.min(Integer.MAX_VALUE - 8, 2L * size));
+        }
+        if ((long) numFields + record.length - 1 > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("More than " + (Integer.MAX_VALUE - 8) + " fields");
+        }
+        if (numFields + record.length - 1 > fields.length) {
+            fields = Arrays.copyOf(fields, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(numFields + record.length - 1, 2L * fields.length)));
+        }
+        for (int i = 0; i < record.length - 1; i++) {
+            long value = number(record[i]);
+            fields[numFields++] = value >= 0 ? value : -(code(record[i]) + 1L);
+        }
+        rowEnds[size++] = numFields;
+    }
+
+    // The value of a field that prints back as itself (digits, no sign, no leading zero), else -1
+    private static long number(String field) {
+        int length = field.length();
+        if (length == 0 || length > MAX_DIGITS || (field.charAt(0) == '0' && length > 1)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = field.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private int code(String value) {
+        int code = codes.getInt(value);
+        if (code < 0) {
+            code = dictionary.size();
+            codes.put(value, code);
+            dictionary.add(value);
+        }
+        return code;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dictionarySize() {
+        return dictionary.size();
+    }
+
+    public int getId(int row) {
+        return (int) fields[rowStart(row)];
+    }
+
+    /**
+     * Appends the stored fields of the row, each followed by a comma (the sign is left to the caller).
+     */
+    public void append(int row, StringBuilder out) {
+        for (int i = rowStart(row); i < rowEnds[row]; i++) {
+            long value = fields[i];
+            if (value >= 0) {
+                out.append(value);
+            } else {
+                out.append(dictionary.get((int) (-value - 1)));
+            }
+            out.append(',');
+        }
+    }
+
+    private int rowStart(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " outside [0, " + size + ")");
+        }
+        return row == 0 ? 0 : rowEnds[row - 1];
+    }
+}
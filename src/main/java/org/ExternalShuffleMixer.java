@@ -0,0 +1,208 @@
+package org;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Two-pass shuffle for final streams that do not fit in memory. Pass one gives every record
+ * occurrence a random 64-bit key and appends it to one of K bucket files picked by the high bits of
+ * the key. Pass two loads one bucket at a time, sorts it by key and appends it to the final stream,
+ * so the stream is in key order: a uniform shuffle with only sequential I/O. A noise record gets
+ * two keys; the occurrence with the smaller key is the insert, the other the delete.
+ * K and the write buffers follow from the memory budget; memory use does not depend on the stream length.
+ * Pass one holds only the write buffers, at least MIN_BUFFER_SIZE each, and pass two one bucket, so a
+ * budget too small for the buckets the stream needs is rejected.
+ */
+public class ExternalShuffleMixer {
+    private static final double BUCKET_SLACK = 1.25; // Room for buckets that come out larger than average
+    private static final int MIN_BUFFER_SIZE = 1 << 13;
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+    private final File tmpFolder;
+    private final int numFields;  // id, attributes..., sign
+    private final int entrySize;  // Bytes per occurrence in a bucket file: key and fields
+    private final int numBuckets;
+    private final ByteBuffer[] buffers;
+    private final long[] bucketSizes;
+    private final SplitMix64 random;
+    private long numRecords;
+
+    /**
+     * @param expectedRecords expected number of occurrences (residu + 2 * noise), used to size the buckets
+     */
+    public ExternalShuffleMixer(File tmpFolder, long memoryBudgetBytes, long expectedRecords, int numFields, long seed) {
+        this.tmpFolder = tmpFolder;
+        this.numFields = numFields;
+        this.entrySize = 8 + 4 * numFields;
+        // Pass two holds a bucket as keys, fields and a sort index; half of the budget is left for the rest
+        long bytesPerRecord = entrySize + 4;
+        long recordsPerBucket = Math.max(1, Math.min(memoryBudgetBytes / 2 / bytesPerRecord, Integer.MAX_VALUE / numFields));
+        long neededBuckets = Math.max(1, (long) Math.ceil(expectedRecords * BUCKET_SLACK / recordsPerBucket));
+        long maxBuckets = Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryBudgetBytes / MIN_BUFFER_SIZE));
+        if (neededBuckets > maxBuckets) {
+            throw new IllegalArgumentException("A memory budget of " + memoryBudgetBytes + " bytes has room for " + maxBuckets
+                    + " write buffers, but " + expectedRecords + " records need " + neededBuckets + " buckets; raise mixMemoryBudgetMB");
+        }
+        this.numBuckets = (int) neededBuckets;
+        int bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, memoryBudgetBytes / numBuckets));
+        bufferSize -= bufferSize % entrySize;
+        this.buffers = new ByteBuffer[numBuckets];
+        for (int b = 0; b < numBuckets; b++) {
+            buffers[b] = ByteBuffer.allocate(bufferSize);
+        }
+        this.bucketSizes = new long[numBuckets];
+        this.random = new SplitMix64(seed);
+        tmpFolder.mkdirs();
+        for (int b = 0; b < numBuckets; b++) {
+            bucketFile(b).delete(); // Left over from an interrupted run, buckets are appended to
+        }
+        System.out.println("External shuffle: " + numBuckets + " buckets of about " + recordsPerBucket
+                + " records, " + bufferSize + " byte write buffers, in " + tmpFolder.getAbsolutePath());
+    }
+
+    public int getNumBuckets() {
+        return numBuckets;
+    }
+
+    /**
+     * Adds one residu record (id, attributes...; the sign column is ignored and written as 1).
+     */
+    public void addResidu(int[] row) throws IOException {
+        scatter(random.nextLong(), row, 1);
+    }
+
+    /**
+     * Adds the insert and the delete of one noise record (id, attributes...; the sign column is ignored).
+     */
+    public void addNoise(int[] row) throws IOException {
+        long first = random.nextLong();
+        long second = random.nextLong();
+        if (Long.compareUnsigned(first, second) > 0) {
+            long tmp = first;
+            first = second;
+            second = tmp;
+        }
+        scatter(first, row, 1);
+        scatter(second, row, -1);
+    }
+
+    /**
+     * Adds a row that goes where its key falls in the (unsigned) key order, e.g. at its output position.
+     */
+    protected void scatter(long key, int[] row, int sign) throws IOException {
+        if (row.length != numFields) {
+            throw new IllegalArgumentException("Expected " + numFields + " fields but got " + row.length);
+        }
+        // High 64 bits of the unsigned product key * numBuckets; multiplyHigh is signed, so add numBuckets for a negative key
+        int bucket = (int) (Math.multiplyHigh(key, numBuckets) + ((key >> 63) & numBuckets));
+        ByteBuffer buffer = buffers[bucket];
+        if (buffer.remaining() < entrySize) {
+            flush(bucket);
+        }
+        buffer.putLong(key);
+        for (int i = 0; i < numFields - 1; i++) {
+            buffer.putInt(row[i]);
+        }
+        buffer.putInt(sign);
+        bucketSizes[bucket]++;
+        numRecords++;
+    }
+
+    private void flush(int bucket) throws IOException {
+        ByteBuffer buffer = buffers[bucket];
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        // Opened per flush so thousands of buckets do not need thousands of open files
+        try (FileChannel channel = FileChannel.open(bucketFile(bucket).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    private File bucketFile(int bucket) {
+        return new File(tmpFolder, "bucket_" + bucket + ".bin");
+    }
+
+    /**
+     * Pass two: writes the header and all buckets in key order to finalStreamFile, then removes the buckets.
+     * Returns the number of records written.
+     */
+    public long mix(String header, String finalStreamFile) throws IOException {
+        for (int b = 0; b < numBuckets; b++) {
+            flush(b);
+            buffers[b] = null; // Write buffers are not needed in pass two
+        }
+        System.out.println("Scattered " + numRecords + " records, start writing " + finalStreamFile);
+        long written = 0;
+        try (CsvRecordEncoder writer = CsvRecordEncoder.open(finalStreamFile)) {
+            writer.writeLine(header);
+            for (int b = 0; b < numBuckets; b++) {
+                if (bucketSizes[b] > 0) {
+                    written += writeBucket(b, writer);
+                }
+                if (b % 100 == 0) {
+                    System.out.printf("\rWrote %d / %d buckets.", b + 1, numBuckets);
+                }
+            }
+        }
+        System.out.println();
+        if (written != numRecords) {
+            throw new IllegalStateException("Wrote " + written + " records but scattered " + numRecords);
+        }
+        return written;
+    }
+
+    private long writeBucket(int bucket, CsvRecordEncoder writer) throws IOException {
+        if (bucketSizes[bucket] > Integer.MAX_VALUE / numFields) {
+            throw new IllegalStateException("Bucket " + bucket + " has " + bucketSizes[bucket] + " records, raise mixMemoryBudgetMB");
+        }
+        int size = (int) bucketSizes[bucket];
+        long[] keys = new long[size];
+        int[] fields = new int[size * numFields];
+        File file = bucketFile(bucket);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_BUFFER_SIZE - MAX_BUFFER_SIZE % entrySize);
+            int index = 0;
+            while (index < size) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Bucket file " + file + " ends after " + index + " of " + size + " records");
+                }
+                buffer.flip();
+                while (buffer.remaining() >= entrySize) {
+                    keys[index] = buffer.getLong();
+                    for (int i = 0; i < numFields; i++) {
+                        fields[index * numFields + i] = buffer.getInt();
+                    }
+                    index++;
+                }
+                buffer.compact();
+            }
+        }
+        file.delete();
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // Equal keys (practically never) keep an insert before its delete
+        IntArrays.quickSort(order, (a, b) -> {
+            int byKey = Long.compareUnsigned(keys[a], keys[b]);
+            return byKey != 0 ? byKey : Integer.compare(fields[b * numFields + numFields - 1], fields[a * numFields + numFields - 1]);
+        });
+        for (int i : order) {
+            int offset = i * numFields;
+            writer.writeRecord(fields, offset, offset + numFields - 1, fields[offset + numFields - 1]);
+        }
+        return size;
+    }
+}
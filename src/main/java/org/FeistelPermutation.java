@@ -0,0 +1,82 @@
+package org;
+
+/**
+ * Keyed bijection on [0, size): a balanced Feistel network on the smallest even number of bits that
+ * covers size, with cycle-walking to stay inside the domain. apply and inverse take O(1) memory and
+ * time (the walk takes fewer than 4 steps on average), so a stream of any length can be put in a
+ * random order without materializing it.
+ */
+public class FeistelPermutation {
+    private static final int ROUNDS = 8;
+
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public FeistelPermutation(long size, long seed) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Permutation size must be positive, got " + size);
+        }
+        this.size = size;
+        int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        SplitMix64 keys = new SplitMix64(seed);
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = keys.nextLong();
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long apply(long x) {
+        checkRange(x);
+        do {
+            x = encrypt(x);
+        } while (x >= size);
+        return x;
+    }
+
+    public long inverse(long y) {
+        checkRange(y);
+        do {
+            y = decrypt(y);
+        } while (y >= size);
+        return y;
+    }
+
+    private long encrypt(long x) {
+        long left = x >>> halfBits;
+        long right = x & halfMask;
+        for (int i = 0; i < ROUNDS; i++) {
+            long next = left ^ round(right, i);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long decrypt(long y) {
+        long left = y >>> halfBits;
+        long right = y & halfMask;
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            long previous = right ^ round(left, i);
+            right = left;
+            left = previous;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private long round(long half, int i) {
+        return SplitMix64.mix64(half ^ roundKeys[i]) & halfMask;
+    }
+
+    private void checkRange(long x) {
+        if (x < 0 || x >= size) {
+            throw new IndexOutOfBoundsException("Value " + x + " outside [0, " + size + ")");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Mixes a residu and a noise inserts CSV file of any dataset (header line, id first, optionally sign
+ * last) by a column schema instead of a hard-coded record layout. Both files are loaded column by
+ * column into a ColumnTable, so BIGINT and VARCHAR columns get the same array-backed path as the
+ * int attributes of the synthetic data, and every line is formatted straight from the columns.
+ * The schema is Config.mixColumnTypes or, when empty, inferred from the first rows of the residu file.
+ * Order and signs follow mixOrder and mixSeed through MixSlots, the slot model of MixInMemory.mixRecords.
+ * Nulls are written like the dataset mixers write them: empty in residu rows, which they copy as read,
+ * and "null" in noise rows, which they get from DuckDB's getString.
+ * MixInMemory and MixInMemorySynthDB keep their own path: their records are already int[], and they
+ * read header-less split files, binary files and combined generator output, none of which is such a CSV.
+ */
+public class GenericMixer {
+    private static final int INFER_ROWS = 10000;
+
+    private final List<String> columnTypes;
+    private final long seed;
+    private final String mixOrder;
+    private final ParallelMixer writer;
+
+    public GenericMixer(Config config, File tmpFolder) {
+        this.columnTypes = config.mixColumnTypes;
+        this.seed = config.mixSeed;
+        this.mixOrder = config.mixOrder;
+        this.writer = new ParallelMixer(tmpFolder, config.parallelMix ? config.numThreads : 1);
+    }
+
+    /**
+     * The mixer for mixEngine "generic", null for "dataset" (the dataset mixer's own record layout).
+     */
+    public static GenericMixer forEngine(Config config) {
+        return "generic".equals(config.mixEngine) ? new GenericMixer(config, new File(config.readFolder + "tmp/generic_mix")) : null;
+    }
+
+    /**
+     * Writes the mix of residuFile and noiseFile (may be null) and returns the number of records.
+     */
+    public long mix(String residuFile, String noiseFile, String finalStreamFile) throws IOException {
+        String[] header = readHeader(residuFile);
+        int numColumns = header[header.length - 1].trim().equalsIgnoreCase("sign") ? header.length - 1 : header.length;
+        PrimitiveInsertStore.ColumnType[] schema = schema(residuFile, numColumns);
+        System.out.println("Mixing " + residuFile + " with schema " + String.join(",", columnNames(header, numColumns, schema)));
+
+        ColumnTable residu = ColumnTable.read(residuFile, schema);
+        ColumnTable noise = noiseFile != null ? ColumnTable.read(noiseFile, schema) : null;
+        int numResidu = residu.size();
+        int numNoise = noise != null ? noise.size() : 0;
+        System.out.println("Read " + numResidu + " residu and " + numNoise + " noise records");
+
+        MixSlots slots = new MixSlots(numResidu, numNoise, mixOrder, seed).markDeletes();
+        long numRecords = slots.size();
+        Supplier<ParallelMixer.RecordFormatter> formatters = () -> (position, out) -> {
+            int slot = slots.slot(position);
+            boolean insert;
+            if (slots.isResidu(slot)) {
+                residu.appendRow(slot, out, "");
+                insert = true;
+            } else {
+                noise.appendRow(slots.noiseRow(slot), out, "null");
+                insert = slots.isInsert(position, slot);
+            }
+            out.append(insert ? "1" : "-1").append(System.lineSeparator());
+        };
+        StringBuilder outputHeader = new StringBuilder();
+        for (int c = 0; c < numColumns; c++) {
+            outputHeader.append(header[c].trim()).append(',');
+        }
+        outputHeader.append("sign\n");
+        writer.write(outputHeader.toString(), numRecords, formatters, finalStreamFile);
+        return numRecords;
+    }
+
+    private PrimitiveInsertStore.ColumnType[] schema(String residuFile, int numColumns) throws IOException {
+        if (columnTypes == null || columnTypes.isEmpty()) {
+            return inferSchema(residuFile, numColumns);
+        }
+        if (columnTypes.size() != numColumns) {
+            throw new IllegalArgumentException("mixColumnTypes has " + columnTypes.size() + " types but "
+                    + residuFile + " has " + numColumns + " columns besides the sign");
+        }
+        PrimitiveInsertStore.ColumnType[] schema = new PrimitiveInsertStore.ColumnType[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            schema[c] = PrimitiveInsertStore.ColumnType.valueOf(columnTypes.get(c).trim().toUpperCase());
+        }
+        return schema;
+    }
+
+    /**
+     * Narrowest type per column that parses every non-empty field of the first rows: INTEGER, BIGINT or VARCHAR.
+     * The first column is the id and must be INTEGER.
+     */
+    public static PrimitiveInsertStore.ColumnType[] inferSchema(String filePath, int numColumns) throws IOException {
+        boolean[] notInt = new boolean[numColumns];
+        boolean[] notLong = new boolean[numColumns];
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            reader.readLine(); // Header
+            String line;
+            int rows = 0;
+            CsvFieldTokenizer fields = new CsvFieldTokenizer();
+            while (rows < INFER_ROWS && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                fields.reset(line);
+                for (int c = 0; c < numColumns && fields.next(); c++) {
+                    String field = fields.field().toString().trim();
+                    if (field.isEmpty() || notLong[c]) {
+                        continue;
+                    }
+                    try {
+                        long value = Long.parseLong(field);
+                        notInt[c] |= value != (int) value;
+                    } catch (NumberFormatException e) {
+                        notInt[c] = true;
+                        notLong[c] = true;
+                    }
+                }
+                rows++;
+            }
+        }
+        if (notInt[0]) {
+            throw new IllegalArgumentException("The first column of " + filePath + " is not an INTEGER id");
+        }
+        PrimitiveInsertStore.ColumnType[] schema = new PrimitiveInsertStore.ColumnType[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            schema[c] = notLong[c] ? PrimitiveInsertStore.ColumnType.VARCHAR
+                    : notInt[c] ? PrimitiveInsertStore.ColumnType.BIGINT : PrimitiveInsertStore.ColumnType.INTEGER;
+        }
+        return schema;
+    }
+
+    private static String[] readHeader(String filePath) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String header = reader.readLine();
+            if (header == null || header.isEmpty()) {
+                throw new IOException("No header line in " + filePath);
+            }
+            return header.split(",");
+        }
+    }
+
+    private static List<String> columnNames(String[] header, int numColumns, PrimitiveInsertStore.ColumnType[] schema) {
+        List<String> names = new ArrayList<>(numColumns);
+        for (int c = 0; c < numColumns; c++) {
+            names.add(header[c].trim() + ":" + schema[c]);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,109 @@
+package org;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+
+/**
+ * Set of the noise ids whose insert has been written but whose delete has not, which is how the
+ * mixers pick the sign of each noise occurrence. Dense id ranges (the synthetic noise ids follow the
+ * residu ids) use one bit per id in [minId, maxId]; sparse ids such as CAIDA's fall back to a
+ * primitive open-addressing set. Neither boxes ids.
+ */
+public class InsertStateTracker {
+    // Use the bitset while it takes at most 8 bytes per tracked id, about what the hash set needs
+    private static final long MAX_BITS_PER_ID = 64;
+
+    private final int minId;
+    private final long[] words;       // Bitset over id - minId, null when sparse
+    private final IntOpenHashSet set; // Used when sparse, null otherwise
+    private int size;
+
+    public InsertStateTracker(int minId, int maxId, int numIds) {
+        long range = (long) maxId - minId + 1;
+        this.minId = minId;
+        if (numIds > 0 && range > 0 && range <= MAX_BITS_PER_ID * numIds) {
+            words = new long[(int) ((range + 63) >>> 6)];
+            set = null;
+        } else {
+            words = null;
+            set = new IntOpenHashSet(Math.max(numIds, 16));
+        }
+    }
+
+    /**
+     * Tracker sized for ids [from, to) of the list.
+     */
+    public static InsertStateTracker forIds(RecordIdList ids, int from, int to) {
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int id = ids.get(i);
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+        }
+        return from < to ? new InsertStateTracker(minId, maxId, to - from) : new InsertStateTracker(0, 0, 0);
+    }
+
+    public boolean isDense() {
+        return words != null;
+    }
+
+    /**
+     * Marks the id as inserted. Returns false if it already was, i.e. this occurrence is its delete.
+     */
+    public boolean add(int id) {
+        if (words == null) {
+            if (set.add(id)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+        int bit = bit(id);
+        long mask = 1L << bit;
+        long word = words[bit >>> 6];
+        if ((word & mask) != 0) {
+            return false;
+        }
+        words[bit >>> 6] = word | mask;
+        size++;
+        return true;
+    }
+
+    /**
+     * Marks the id as deleted. Returns false if it was not inserted.
+     */
+    public boolean remove(int id) {
+        if (words == null) {
+            if (set.remove(id)) {
+                size--;
+                return true;
+            }
+            return false;
+        }
+        int bit = bit(id);
+        long mask = 1L << bit;
+        long word = words[bit >>> 6];
+        if ((word & mask) == 0) {
+            return false;
+        }
+        words[bit >>> 6] = word & ~mask;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int bit(int id) {
+        long bit = (long) id - minId;
+        if (bit < 0 || bit >= (long) words.length << 6) {
+            throw new IllegalArgumentException("ID " + id + " outside the tracked noise ids starting at " + minId);
+        }
+        return (int) bit;
+    }
+}
@@ -0,0 +1,76 @@
+package org;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Mixes by merging sequential reads instead of shuffling: the residu and noise files are already
+ * i.i.d. in generation order, so only the sequence of residu, insert and delete positions has to be
+ * random. With r residu rows, u noise records not yet inserted and l live (inserted, not deleted)
+ * left, the next position is a residu row with probability r / M, an insert with 2u / M and a delete
+ * with l / M, M = r + 2u + l, and a delete removes a live record chosen uniformly. That is the next
+ * slot of a uniform shuffle of the residu and the noise records twice, so every delete lands at a
+ * uniformly random later position, as with Collections.shuffle, but without an id list or random
+ * access. Memory is the live noise records, which peak near half the noise.
+ */
+public class InterleaveMixer {
+    private final SplitMix64 random;
+
+    public InterleaveMixer(long seed) {
+        this.random = new SplitMix64(seed);
+    }
+
+    /**
+     * Writes the stream of numResidu rows of residu and numNoise rows of noise (each inserted and
+     * deleted) and returns the number of records. The cursors must hold at least these many rows.
+     */
+    public long mix(CombinedDataset.RowCursor residu, long numResidu, CombinedDataset.RowCursor noise, long numNoise,
+                    String header, String finalStreamFile) throws IOException {
+        ArrayList<int[]> live = new ArrayList<>();
+        long residuLeft = numResidu;
+        long noiseLeft = numNoise;
+        long written = 0;
+        int maxLive = 0;
+        try (CsvRecordEncoder writer = CsvRecordEncoder.open(finalStreamFile)) {
+            writer.writeLine(header);
+            while (residuLeft + noiseLeft + live.size() > 0) {
+                long pick = Long.remainderUnsigned(random.nextLong(), residuLeft + 2 * noiseLeft + live.size());
+                if (pick < residuLeft) {
+                    write(writer, next(residu, "residu", numResidu - residuLeft, numResidu), 1);
+                    residuLeft--;
+                } else if (pick < residuLeft + 2 * noiseLeft) {
+                    int[] row = next(noise, "noise", numNoise - noiseLeft, numNoise).clone();
+                    write(writer, row, 1);
+                    live.add(row);
+                    maxLive = Math.max(maxLive, live.size());
+                    noiseLeft--;
+                } else {
+                    // pick - residuLeft - 2 * noiseLeft is uniform over the live records; swap-remove it
+                    int index = (int) (pick - residuLeft - 2 * noiseLeft);
+                    int[] row = live.get(index);
+                    live.set(index, live.get(live.size() - 1));
+                    live.remove(live.size() - 1);
+                    write(writer, row, -1);
+                }
+                written++;
+                if (written % 1000000 == 0) {
+                    System.out.printf("\rWrote %d records, %d noise records live.", written, live.size());
+                }
+            }
+        }
+        System.out.println("\rWrote " + written + " records, " + numNoise + " noise inserts, at most " + maxLive + " live");
+        return written;
+    }
+
+    private static int[] next(CombinedDataset.RowCursor cursor, String name, long read, long expected) throws IOException {
+        int[] row = cursor.next();
+        if (row == null) {
+            throw new IllegalStateException("The " + name + " input ends after " + read + " of " + expected + " rows");
+        }
+        return row;
+    }
+
+    private static void write(CsvRecordEncoder writer, int[] row, int sign) throws IOException {
+        writer.writeRecord(row, 0, row.length - 1, sign);
+    }
+}
@@ -0,0 +1,122 @@
+package org;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+
+/**
+ * Mixes in one forward pass instead of shuffling a list of the whole stream: every noise insert gets
+ * a lifetime drawn from a distribution and its delete is due that many positions later. Pending
+ * deletes wait in a priority queue by due position, so memory is bounded by the number of live noise
+ * records, not by the stream length. At every position the first due delete is written; otherwise
+ * the next residu or noise insert, chosen at random in proportion to how many of each are left, so
+ * the inserts are a uniform interleaving of the two files (each in file order).
+ * Lifetimes: "geometric" (memoryless, mean meanLifetime), "uniform" (1 .. 2 * meanLifetime - 1) or
+ * "fixed" (exactly meanLifetime, a sliding window). Deletes still pending when the inserts run out
+ * follow in due order.
+ */
+public class LifetimeStreamMixer {
+    private final String distribution;
+    private final double meanLifetime;
+    private final SplitMix64 random;
+    private final double logKeep; // log(1 - 1 / meanLifetime), for geometric lifetimes
+
+    private static class PendingDelete {
+        final long due;
+        final long order; // Insert order, breaks ties between equal due positions
+        final int[] row;
+
+        PendingDelete(long due, long order, int[] row) {
+            this.due = due;
+            this.order = order;
+            this.row = row;
+        }
+    }
+
+    public LifetimeStreamMixer(String distribution, double meanLifetime, long seed) {
+        if (!"geometric".equals(distribution) && !"uniform".equals(distribution) && !"fixed".equals(distribution)) {
+            throw new IllegalArgumentException("Unknown lifetime distribution " + distribution + ", expected geometric, uniform or fixed");
+        }
+        if (!(meanLifetime >= 1)) {
+            throw new IllegalArgumentException("Mean lifetime must be at least 1 but got " + meanLifetime);
+        }
+        this.distribution = distribution;
+        this.meanLifetime = meanLifetime;
+        this.random = new SplitMix64(seed);
+        this.logKeep = Math.log1p(-1 / meanLifetime);
+    }
+
+    /**
+     * Number of positions from an insert to its delete, at least 1.
+     */
+    long nextLifetime() {
+        switch (distribution) {
+            case "fixed":
+                return Math.max(1, Math.round(meanLifetime));
+            case "uniform":
+                long max = Math.max(1, Math.round(2 * meanLifetime - 1));
+                return 1 + Long.remainderUnsigned(random.nextLong(), max);
+            default:
+                if (meanLifetime == 1) {
+                    return 1;
+                }
+                double u = (random.nextLong() >>> 11) * 0x1.0p-53; // [0, 1)
+                return 1 + (long) Math.floor(Math.log1p(-u) / logKeep);
+        }
+    }
+
+    /**
+     * Writes the stream and returns the number of records. expectedResidu and expectedNoise only weigh
+     * the interleaving; when a cursor runs out early the other one continues.
+     */
+    public long mix(CombinedDataset.RowCursor residu, long expectedResidu, CombinedDataset.RowCursor noise, long expectedNoise,
+                    String header, String finalStreamFile) throws IOException {
+        PriorityQueue<PendingDelete> pending = new PriorityQueue<>((a, b) ->
+                a.due != b.due ? Long.compare(a.due, b.due) : Long.compare(a.order, b.order));
+        long residuLeft = expectedResidu;
+        long noiseLeft = noise != null ? expectedNoise : 0;
+        boolean residuDone = false;
+        boolean noiseDone = noise == null;
+        long position = 0;
+        long numInserts = 0;
+        int maxLive = 0;
+        try (CsvRecordEncoder writer = CsvRecordEncoder.open(finalStreamFile)) {
+            writer.writeLine(header);
+            while (true) {
+                if (!pending.isEmpty() && (pending.peek().due <= position || (residuDone && noiseDone))) {
+                    int[] row = pending.poll().row;
+                    writer.writeRecord(row, 0, row.length - 1, -1);
+                    position++;
+                    continue;
+                }
+                if (residuDone && noiseDone) {
+                    break;
+                }
+                boolean takeNoise = residuDone || (!noiseDone
+                        && Long.remainderUnsigned(random.nextLong(), Math.max(1, residuLeft + noiseLeft)) < noiseLeft);
+                int[] row = takeNoise ? noise.next() : residu.next();
+                if (row == null) {
+                    if (takeNoise) {
+                        noiseDone = true;
+                    } else {
+                        residuDone = true;
+                    }
+                    continue;
+                }
+                if (takeNoise) {
+                    noiseLeft = Math.max(0, noiseLeft - 1);
+                    pending.add(new PendingDelete(position + nextLifetime(), numInserts++, row.clone()));
+                    maxLive = Math.max(maxLive, pending.size());
+                } else {
+                    residuLeft = Math.max(0, residuLeft - 1);
+                }
+                writer.writeRecord(row, 0, row.length - 1, 1);
+                position++;
+                if (position % 1000000 == 0) {
+                    System.out.printf("\rWrote %d records, %d noise records live.", position, pending.size());
+                }
+            }
+        }
+        System.out.println("\rWrote " + position + " records, " + numInserts + " noise inserts, at most " + maxLive + " live");
+        return position;
+    }
+}
@@ -3,21 +3,40 @@ package org;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class MixInMemory {
 
 //    ArrayList<long[]> allRecords;
-    ArrayList<Integer> allRecordsId; // Not used, but kept for reference
+    MixSlots slots; // Order of the final stream, see mixRecords
 //    boolean[] hasBeenSeen;
-    HashSet<Integer> seen;
+    InsertStateTracker seen; // Noise ids inserted but not yet deleted
     double sizeFactor;
+    boolean mixFromCombined;
+    long mixSeed;
+    String mixOrder;
+    long mixMemoryBudgetMB;
+    int numFields; // id, attributes, sign
+    File tmpFolder;
+    boolean parallelMix;
+    int numThreads;
+    String mixLifetime;
+    double mixLifetimeMean;
 
     public MixInMemory(Config config) throws IOException {
         sizeFactor = config.sizeFactor;
+        mixFromCombined = config.mixFromCombined;
+        mixSeed = config.mixSeed;
+        mixOrder = config.mixOrder;
+        mixMemoryBudgetMB = config.mixMemoryBudgetMB;
+        numFields = config.numZipfAttributes + config.numUniformAttributes + 2;
+        tmpFolder = new File(config.readFolder + "tmp/external_shuffle");
+        parallelMix = config.parallelMix;
+        numThreads = config.numThreads;
+        mixLifetime = config.mixLifetime;
+        mixLifetimeMean = config.mixLifetimeMean;
         String synthRootFolderName = config.readFolder + "input/synthFromDisk/" + sizeFactor;
         System.out.println("synthRootFolder: " + synthRootFolderName);
 //        synthRootFolderName = synthRootFolderName.replace("./", ""); // Remove leading "./" if present
@@ -28,7 +47,7 @@ public class MixInMemory {
         }
 
         // Pattern to detect shuffled residu file and extract suffix
-        Pattern pattern = Pattern.compile("residu(.*)\\.csv");
+        Pattern pattern = Pattern.compile("residu(.*)\\.(csv|bin)");
 
         // Recursively process subfolders
         processFolderRecursively(synthRootFolder, pattern);
@@ -49,12 +68,22 @@ public class MixInMemory {
         for (File file : files) {
             if (file.isDirectory()) {
                 processFolderRecursively(file, pattern);  // Recurse into subfolders
+            } else if (mixFromCombined) {
+                CombinedDataset dataset = CombinedDataset.of(file.getAbsolutePath());
+                if (dataset != null) {
+                    mixCombined(folder, dataset);
+                }
             } else {
+                Matcher manifestMatcher = DatasetManifest.FILE_PATTERN.matcher(file.getName());
+                if (manifestMatcher.matches()) {
+                    mixManifest(folder, file, manifestMatcher.group(1));
+                    break;
+                }
                 Matcher matcher = pattern.matcher(file.getName());
                 if (matcher.matches()) {
                     suffix = matcher.group(1);  // Includes leading underscores
                     residuFile = file.getAbsolutePath();
-                    insertFile = new File(folder, "noise_inserts" + suffix + ".csv").getAbsolutePath();
+                    insertFile = new File(folder, "noise_inserts" + suffix + "." + matcher.group(2)).getAbsolutePath();
                     foundResidu = true;
                     break;
                 }
@@ -72,7 +101,7 @@ public class MixInMemory {
             double perc= 0.0;
             if (hasInserts) {
                 System.out.println("Inserts: " + insertFile);
-                perc = Double.parseDouble(insertFile.split("1.3_0_")[1].split(".csv")[0]);
+                perc = Double.parseDouble(insertFile.split("1.3_0_")[1].split("\\.(csv|bin)")[0]);
                 System.out.println("Percentage of inserts: " + perc);
             }
 
@@ -84,64 +113,196 @@ public class MixInMemory {
         }
     }
 
+    // A sweep manifest points at the shared residu and a prefix of the shared noise inserts
+    private void mixManifest(File folder, File manifestFile, String suffix) throws IOException {
+        DatasetManifest manifest = DatasetManifest.read(manifestFile);
+        System.out.println("Manifest: " + manifestFile.getAbsolutePath() + " (" + manifest.noiseRecords + " noise records)");
+        String finalStreamFile = new File(folder.getParent(), "final_stream_spread_out" + suffix + ".csv").getAbsolutePath();
+        mixFiles(manifest.residuFile, manifest.noiseRecords > 0 ? manifest.noiseInsertsFile : null, finalStreamFile, manifest.perc);
+    }
+
+    // Takes residu and noise inserts straight from the generator output; its deletes only repeat the inserts
+    private void mixCombined(File folder, CombinedDataset dataset) throws IOException {
+        System.out.println("Combined dataset: " + dataset.getFilePath());
+        long residuSize = (long) Math.pow(2, sizeFactor);
+        int insertSize = (int) (dataset.getPerc() * Math.pow(2, sizeFactor));
+        if ("lifetime".equals(mixOrder)) {
+            try (CombinedDataset.RowCursor residu = dataset.openResidu(residuSize);
+                 CombinedDataset.RowCursor noise = dataset.openNoiseInserts(residuSize)) {
+                newLifetimeMixer().mix(residu, residuSize, noise, insertSize, header(),
+                        new File(folder, "final_stream_spread_out" + dataset.getSuffix() + ".csv").getAbsolutePath());
+            }
+            return;
+        }
+        if ("interleave".equals(mixOrder)) {
+            try (CombinedDataset.RowCursor residu = dataset.openResidu(residuSize);
+                 CombinedDataset.RowCursor noise = dataset.openNoiseInserts(residuSize)) {
+                new InterleaveMixer(mixSeed).mix(residu, residuSize, noise, insertSize, header(),
+                        new File(folder, "final_stream_spread_out" + dataset.getSuffix() + ".csv").getAbsolutePath());
+            }
+            return;
+        }
+        if (mixMemoryBudgetMB > 0) {
+            ExternalShuffleMixer mixer = newExternalMixer(residuSize, insertSize);
+            dataset.forEachRow(row -> {
+                if (row[row.length - 1] == 1 && row[0] < residuSize) {
+                    mixer.addResidu(row);
+                } else if (row[row.length - 1] == 1) {
+                    mixer.addNoise(row);
+                }
+            });
+            mixer.mix(header(), new File(folder, "final_stream_spread_out" + dataset.getSuffix() + ".csv").getAbsolutePath());
+            return;
+        }
+        int insertRecordSize = numFields; // Same layout as readDatasetInserts
+        int[] inserts = new int[insertSize * insertRecordSize];
+        OffHeapRecordStore residu = new OffHeapRecordStore();
+        int[] maxResiduId = {0};
+        int[] insertIndex = {0};
+        dataset.forEachRow(row -> {
+            int sign = row[row.length - 1];
+            if (sign == 1 && row[0] < residuSize) {
+                int[] record = row.clone();
+                record[record.length - 1] = -2;
+                residu.add(record);
+                maxResiduId[0] = Math.max(maxResiduId[0], record[0]);
+            } else if (sign == 1 && insertIndex[0] < inserts.length) {
+                System.arraycopy(row, 0, inserts, insertIndex[0], insertRecordSize - 1);
+                inserts[insertIndex[0] + insertRecordSize - 1] = -3;
+                insertIndex[0] += insertRecordSize;
+            }
+        });
+        System.out.println("Read " + residu.size() + " residu records and " + insertIndex[0] / insertRecordSize + " noise inserts");
+        String finalStreamFile = new File(folder, "final_stream_spread_out" + dataset.getSuffix() + ".csv").getAbsolutePath();
+        mixRecords(residu, maxResiduId[0], insertSize > 0 ? inserts : null, insertRecordSize, finalStreamFile);
+    }
+
     private void mixFiles(String residuFile, String insertFile, String finalStreamFile, double perc) throws IOException {
         // Estimate initial size to reduce resizing (arbitrary reasonable defaults)
 //        this.allRecords = new ArrayList<>(100_000);
 
 //        ArrayList<int[]> inserts = new ArrayList<>();
         int insertSize = (int) (perc * Math.pow(2, sizeFactor));
-        int insertRecordSize = 10; // Assuming 10 attributes + sign
-        this.allRecordsId = new ArrayList<>((int) (2 * insertSize)); // Not used, but kept for reference
+        if ("lifetime".equals(mixOrder)) {
+            try (CombinedDataset.RowCursor residu = CombinedDataset.open(residuFile, Long.MAX_VALUE);
+                 CombinedDataset.RowCursor noise = insertFile != null ? CombinedDataset.open(insertFile, insertSize) : null) {
+                newLifetimeMixer().mix(residu, (long) Math.pow(2, sizeFactor), noise,
+                        insertFile != null ? insertSize : 0, header(), finalStreamFile);
+            }
+            return;
+        }
+        if ("interleave".equals(mixOrder)) {
+            try (CombinedDataset.RowCursor residu = CombinedDataset.open(residuFile, Long.MAX_VALUE);
+                 CombinedDataset.RowCursor noise = insertFile != null ? CombinedDataset.open(insertFile, insertSize) : null) {
+                new InterleaveMixer(mixSeed).mix(residu, (long) Math.pow(2, sizeFactor), noise,
+                        insertFile != null ? insertSize : 0, header(), finalStreamFile);
+            }
+            return;
+        }
+        if (mixMemoryBudgetMB > 0) {
+            ExternalShuffleMixer mixer = newExternalMixer((long) Math.pow(2, sizeFactor), insertSize);
+            CombinedDataset.forEachRow(residuFile, Long.MAX_VALUE, mixer::addResidu);
+            if (insertFile != null) {
+                CombinedDataset.forEachRow(insertFile, insertSize, mixer::addNoise);
+            }
+            mixer.mix(header(), finalStreamFile);
+            return;
+        }
+        int insertRecordSize = numFields; // id, attributes, sign
         int[] inserts = new int[insertSize * insertRecordSize];
-        ArrayList<int[]> residu = new ArrayList<>();
+        OffHeapRecordStore residu = new OffHeapRecordStore();
 
         int maxResiduId = readDataset(residuFile, residu, false);
         System.out.println("Read " + residu.size() + " residu records from: " + residuFile);
-        putInList(allRecordsId, residu);
         if (insertFile != null) {
             readDatasetInserts(insertFile, inserts, true, insertRecordSize);
             System.out.println("Read " + insertSize + " noise inserts from: " + insertFile);
-            seen = new HashSet<>(100); // Load factor consideration
-            System.out.println("Initialized seen set for noise inserts with size: " + seen.size());
-            putInListInserts(allRecordsId, inserts, insertRecordSize);
-            System.out.println("Put records in list");
-            allRecordsId.addAll(allRecordsId);
-            System.out.println("Twice");
         }
+        mixRecords(residu, maxResiduId, insertFile != null ? inserts : null, insertRecordSize, finalStreamFile);
+    }
+
+    // Streams residu and noise through disk buckets instead of holding them; reads the same records as mixRecords
+    private ExternalShuffleMixer newExternalMixer(long numResidu, long numNoise) {
+        if ("permutation".equals(mixOrder)) {
+            // Sort-merge: records go to their permutation positions, the same stream as the in-memory permutation order
+            return new SortMergeMixer(tmpFolder, mixMemoryBudgetMB << 20, numResidu, numNoise, numFields, mixSeed);
+        }
+        return new ExternalShuffleMixer(tmpFolder, mixMemoryBudgetMB << 20, numResidu + 2 * numNoise, numFields, mixSeed);
+    }
 
+    // Holds only the live noise records, whatever the stream length
+    private LifetimeStreamMixer newLifetimeMixer() {
+        return new LifetimeStreamMixer(mixLifetime, mixLifetimeMean, mixSeed);
+    }
 
+    private String header() {
+        StringBuilder header = new StringBuilder("id");
+        for (int i = 1; i < numFields - 1; i++) {
+            header.append(",attr").append(i);
+        }
+        return header.append(",sign").toString();
+    }
 
-        System.out.println("Start shuffling records...");
-        Collections.shuffle(allRecordsId);
-        System.out.println("Finished shuffling records. Total records: " + allRecordsId.size());
+    private void mixRecords(OffHeapRecordStore residu, int maxResiduId, int[] inserts, int insertRecordSize, String finalStreamFile) throws IOException {
+        // Slots [0, numResidu) are residu records, the next 2 * numNoise slots the noise inserts twice:
+        // slot numResidu + k and numResidu + numNoise + k both stand for insert k, so nothing is copied
+        int numResidu = residu.size();
+        int numNoise = inserts != null ? inserts.length / insertRecordSize : 0;
+        if ("permutation".equals(mixOrder)) {
+            slots = new MixSlots(numResidu, numNoise, mixOrder, mixSeed);
+            System.out.println("Mixing " + slots.size() + " records in permutation order");
+        } else {
+            if (inserts != null) {
+                int minId = Integer.MAX_VALUE;
+                int maxId = Integer.MIN_VALUE;
+                for (int i = 0; i < inserts.length; i += insertRecordSize) {
+                    minId = Math.min(minId, inserts[i]);
+                    maxId = Math.max(maxId, inserts[i]);
+                }
+                seen = new InsertStateTracker(minId, maxId, numNoise);
+                System.out.println("Put " + numResidu + " residu and 2 x " + numNoise + " noise records in list");
+            }
+
+            System.out.println("Start shuffling records...");
+            slots = new MixSlots(numResidu, numNoise, mixOrder, mixSeed);
+            System.out.println("Finished shuffling records. Total records: " + slots.size());
+        }
+        long numRecords = slots.size();
+        if (parallelMix) {
+            mixRecordsParallel(residu, maxResiduId, inserts, insertRecordSize, numRecords, finalStreamFile);
+            return;
+        }
 
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(finalStreamFile))) {
-            // Static header - no need to build this per iteration
-            writer.write("id,attr1,attr2,attr3,attr4,attr5,attr6,attr7,attr8,attr9,sign\n");
+            writer.write(header() + "\n");
 
             StringBuilder sb = new StringBuilder(256); // Reuse the same StringBuilder
-            for (int rid : allRecordsId) {
+            int[] insertRecord = new int[insertRecordSize];
+            int[] residuRecord = new int[residu.getStride()];
+            for (long i = 0; i < numRecords; i++) {
+                int slot = slots.slot(i);
                 int[] record;
-                if (rid <= maxResiduId) {
-                    record = residu.get(rid);
+                if (slots.isResidu(slot)) {
+                    record = residu.get(slot, residuRecord);
                 } else {
-                    System.arraycopy(inserts, (rid - maxResiduId - 1) * insertRecordSize, record = new int[insertRecordSize], 0, insertRecordSize);
-//                    record = inserts.get(rid - maxResiduId - 1); // Adjust index for inserts
+                    System.arraycopy(inserts, slots.noiseRow(slot) * insertRecordSize, record = insertRecord, 0, insertRecordSize);
                 }
-                //test:
-                if (record[0] != rid) {
-                    throw new IllegalStateException("Record ID mismatch: expected " + rid + ", got " + record[0]);
+                int rid = record[0];
+                if (slots.isResidu(slot) && rid > maxResiduId) {
+                    throw new IllegalStateException("Residu record ID " + rid + " above max residu ID " + maxResiduId);
                 }
 
                 sb.setLength(0); // Reset the StringBuilder
 
-                for (int i = 0; i < record.length - 1; i++) {
-                    sb.append(record[i]).append(',');
+                for (int j = 0; j < record.length - 1; j++) {
+                    sb.append(record[j]).append(',');
                 }
 
                 long sign = record[record.length - 1];
                 if (sign == -2) {
                     sb.append("1");
+                } else if (sign == -3 && slots.isPermutation()) {
+                    sb.append(slots.isInsert(i, slot) ? "1" : "-1");
                 } else if (sign == -3) {
                     if (seen.add(rid)) { // add returns true if id was not present
                         sb.append("1");
@@ -167,19 +328,42 @@ public class MixInMemory {
         }
     }
 
-    private void putInList(ArrayList<Integer> allRecordsId, ArrayList<int[]> residu) {
-        for (int[] record : residu) {
-            if (record.length < 1) {
-                throw new IllegalArgumentException("Record must have at least one element (ID).");
-            }
-            allRecordsId.add(record[0]); // Assuming ID is the first element
-        }
-    }
-
-    private void putInListInserts(ArrayList<Integer> allRecordsId, int[] inserts, int insertRecordSize) {
-        for (int i = 0; i < inserts.length; i += insertRecordSize) {
-            allRecordsId.add(inserts[i]); // Assuming ID is the first element
-        }
+    // Same stream as the loop in mixRecords, but the signs are known per position up front, so
+    // numThreads threads can each format a segment of positions
+    private void mixRecordsParallel(OffHeapRecordStore residu, int maxResiduId, int[] inserts, int insertRecordSize,
+                                    long numRecords, String finalStreamFile) throws IOException {
+        slots.markDeletes();
+        System.out.println("Mixing " + numRecords + " records on " + numThreads + " threads");
+        Supplier<ParallelMixer.RecordFormatter> formatters = () -> {
+            int[] insertRecord = new int[insertRecordSize];
+            int[] residuRecord = new int[residu.getStride()];
+            return (position, sb) -> {
+                int slot = slots.slot(position);
+                int[] record;
+                if (slots.isResidu(slot)) {
+                    record = residu.get(slot, residuRecord);
+                    if (record[0] > maxResiduId) {
+                        throw new IllegalStateException("Residu record ID " + record[0] + " above max residu ID " + maxResiduId);
+                    }
+                } else {
+                    System.arraycopy(inserts, slots.noiseRow(slot) * insertRecordSize, record = insertRecord, 0, insertRecordSize);
+                }
+                for (int j = 0; j < record.length - 1; j++) {
+                    sb.append(record[j]).append(',');
+                }
+                long sign = record[record.length - 1];
+                if (sign == -2) {
+                    sb.append("1");
+                } else if (sign == -3) {
+                    sb.append(slots.isInsert(position, slot) ? "1" : "-1");
+                } else {
+                    throw new IllegalArgumentException("Unexpected sign value: " + sign);
+                }
+                sb.append(System.lineSeparator());
+            };
+        };
+        new ParallelMixer(new File(tmpFolder.getParentFile(), "parallel_mix"), numThreads)
+                .write(header() + "\n", numRecords, formatters, finalStreamFile);
     }
 
 
@@ -225,14 +409,19 @@ public class MixInMemory {
 
 
 
-    public int readDataset(String filePath, ArrayList<int[]> dataset, boolean isNoise) throws IOException {
+    public int readDataset(String filePath, OffHeapRecordStore dataset, boolean isNoise) throws IOException {
+        if (BinaryRecordReader.isBinary(filePath)) {
+            return readBinaryDataset(filePath, dataset, isNoise);
+        }
         BufferedReader reader = new BufferedReader(new FileReader(filePath));
         int maxId = 0; // Track max ID for inserts
-        reader.readLine(); // Skip header line
         String line;
         boolean firstIsSet = false; // Track if first ID is set
         int[] dataPoint = new int[0];
         while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("id")) {
+                continue; // Header; the split files have none, so their first line is a record
+            }
             int length = line.length();
             int commaCount = 0;
             for (int i = 0; i < length; i++) {
@@ -241,6 +430,7 @@ public class MixInMemory {
 
             if (!firstIsSet) {
                 dataPoint = new int[commaCount + 1]; // Last column replaced by -2/-3
+                firstIsSet = true; // Reused, the store copies every record
             }
 
             int partStart = 0;
@@ -271,7 +461,7 @@ public class MixInMemory {
             // Set last element manually based on isNoise
             dataPoint[dataPoint.length - 1] = isNoise ? -3 : -2;
             if (!isNoise && dataPoint[0] > maxId) {
-                maxId = (int) dataPoint[0]; // Update max ID for residu
+                maxId = dataPoint[0]; // Update max ID for residu
             }
 
             dataset.add(dataPoint);
@@ -295,15 +485,47 @@ public class MixInMemory {
 //        reader.close();
     }
 
+    // Binary files keep their header apart from the records
+    private int readBinaryDataset(String filePath, OffHeapRecordStore dataset, boolean isNoise) throws IOException {
+        int maxId = 0;
+        try (BinaryRecordReader reader = new BinaryRecordReader(filePath)) {
+            int numFields = reader.getNumFields();
+            int[] dataPoint = new int[numFields]; // Last column replaced by -2/-3
+            for (long row = 0; row < reader.getRecordCount(); row++) {
+                reader.readRecord(row, dataPoint, 0, numFields - 1);
+                dataPoint[numFields - 1] = isNoise ? -3 : -2;
+                if (!isNoise && dataPoint[0] > maxId) {
+                    maxId = dataPoint[0];
+                }
+                dataset.add(dataPoint);
+            }
+        }
+        return maxId;
+    }
+
     public void readDatasetInserts(String filePath, int[] dataset, boolean isNoise, int noiseRecordSize) throws IOException {
+        if (BinaryRecordReader.isBinary(filePath)) {
+            try (BinaryRecordReader reader = new BinaryRecordReader(filePath)) {
+                long numRecords = Math.min(reader.getRecordCount(), dataset.length / noiseRecordSize);
+                int index = 0;
+                for (long row = 0; row < numRecords; row++) {
+                    reader.readRecord(row, dataset, index, noiseRecordSize - 1);
+                    dataset[index + noiseRecordSize - 1] = isNoise ? -3 : -2;
+                    index += noiseRecordSize;
+                }
+            }
+            return;
+        }
         BufferedReader reader = new BufferedReader(new FileReader(filePath));
         int maxId = 0; // Track max ID for inserts
-        reader.readLine(); // Skip header line
         String line;
         boolean firstIsSet = false; // Track if first ID is set
         int[] dataPoint = new int[noiseRecordSize];
         int index = 0;
-        while ((line = reader.readLine()) != null) {
+        while (index < dataset.length && (line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("id")) {
+                continue; // Header, as in readDataset
+            }
             int length = line.length();
 //            int commaCount = 0;
 //            for (int i = 0; i < length; i++) {
@@ -337,7 +559,7 @@ public class MixInMemory {
             // Set last element manually based on isNoise
             dataPoint[dataPoint.length - 1] = isNoise ? -3 : -2;
             if (!isNoise && dataPoint[0] > maxId) {
-                maxId = (int) dataPoint[0]; // Update max ID for residu
+                maxId = dataPoint[0]; // Update max ID for residu
             }
 
             System.arraycopy(dataPoint, 0, dataset, index, dataPoint.length);
@@ -5,16 +5,31 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class MixInMemoryCAIDADB {
     Connection conn;
-    ArrayList<Integer> allRecordsId;
-    HashSet<Integer> seen;
+    RecordIdList allRecordsId; // Order of the final stream: noise ids twice, then residu positions
+    long mixSeed;
+    InsertStateTracker seen; // Noise ids inserted but not yet deleted
+    String insertStoreMode;
+    PrimitiveInsertStore insertStore; // null when the inserts are in DuckDB
+    GenericMixer genericMixer; // null unless mixEngine is "generic"
     int sizeFactor;
-    private final Map<InsertRef, String[]> insertRecordCache = new HashMap<>();
+    int mixPipelineDepth;
+    // Filled by the fetch stage of the pipeline, drained by its format stage
+    private final Map<InsertRef, String[]> insertRecordCache = new ConcurrentHashMap<>();
     private final int BATCH_SIZE = 100000;
+    // Same columns as the DuckDB inserts table
+    private static final PrimitiveInsertStore.ColumnType[] INSERT_COLUMNS = {
+            PrimitiveInsertStore.ColumnType.INTEGER, PrimitiveInsertStore.ColumnType.BIGINT,
+            PrimitiveInsertStore.ColumnType.BIGINT, PrimitiveInsertStore.ColumnType.BIGINT,
+            PrimitiveInsertStore.ColumnType.BIGINT, PrimitiveInsertStore.ColumnType.BIGINT,
+            PrimitiveInsertStore.ColumnType.BIGINT, PrimitiveInsertStore.ColumnType.BIGINT,
+            PrimitiveInsertStore.ColumnType.INTEGER, PrimitiveInsertStore.ColumnType.INTEGER
+    };
 
     static class InsertRef {
         int rid;
@@ -38,10 +53,25 @@ public class MixInMemoryCAIDADB {
         }
     }
 
+    // The records of one batch in stream order, and those of them that are fetched from the inserts
+    static class Batch {
+        final List<InsertRef> refs;
+        final List<InsertRef> toFetch;
+
+        Batch(List<InsertRef> refs, List<InsertRef> toFetch) {
+            this.refs = refs;
+            this.toFetch = toFetch;
+        }
+    }
+
 
 
     public MixInMemoryCAIDADB(Config config) throws IOException, SQLException {
         sizeFactor = config.sizeFactor;
+        mixSeed = config.mixSeed;
+        mixPipelineDepth = config.mixPipelineDepth;
+        insertStoreMode = config.insertStore;
+        genericMixer = GenericMixer.forEngine(config);
         conn = DriverManager.getConnection("jdbc:duckdb:" + config.readFolder + "tmp/mix_in_memory.db");
         String synthRootFolderName = config.readFolder + "input/data/CAIDA/" + sizeFactor;
         System.out.println("synthRootFolder: " + synthRootFolderName);
@@ -92,72 +122,91 @@ public class MixInMemoryCAIDADB {
 
 
     private void mixFiles(String residuFile, String insertFile, String finalStreamFile, double perc) throws IOException, SQLException {
-        this.allRecordsId = new ArrayList<>((10000));
+        if (genericMixer != null) {
+            writeCount(finalStreamFile, genericMixer.mix(residuFile, insertFile, finalStreamFile));
+            return;
+        }
+        this.allRecordsId = new RecordIdList((10000));
 
         if (insertFile != null) {
-            seen = new HashSet<>((1000));
-            loadInsertsIntoDuckDB(insertFile);
-            putInListFromDB(allRecordsId);
-            allRecordsId.addAll(allRecordsId);
+            if ("memory".equals(insertStoreMode)) {
+                insertStore = PrimitiveInsertStore.read(insertFile, INSERT_COLUMNS);
+                for (int row = 0; row < insertStore.size(); row++) {
+                    allRecordsId.add(insertStore.id(row));
+                }
+            } else {
+                loadInsertsIntoDuckDB(insertFile);
+                putInListFromDB(allRecordsId);
+            }
+            allRecordsId.duplicate(0);
+            seen = InsertStateTracker.forIds(allRecordsId, 0, allRecordsId.size() / 2);
         }
 
-        ArrayList<String[]> residu = new ArrayList<>();
+        DictionaryRecordStore residu = new DictionaryRecordStore();
 
         int maxResiduId = readDataset(residuFile, residu, false);
+        System.out.println("Read " + residu.size() + " residu records with " + residu.dictionarySize() + " distinct values");
         putInList(allRecordsId, residu);
 
 
-        Collections.shuffle(allRecordsId, new Random(42)); // Shuffle to ensure randomness in the final stream
-        prepareStatement();
+        allRecordsId.shuffle(new Random(mixSeed)); // Shuffle to ensure randomness in the final stream
+        if (insertStore == null) {
+            prepareStatement();
+        }
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(finalStreamFile))) {
             writer.write("id,frametime,ipsrc,ipsrcnet,ipsrchost,ipdst,ipdstnet,ipdsthost,ipproto,sign\n");
-            StringBuilder sb = new StringBuilder(256);
 
-            int progress = 0;
-            List<InsertRef> processingBuffer = new ArrayList<>(BATCH_SIZE);
-            List<InsertRef> insertIdsToFetch = new ArrayList<>();
+            int[] progress = {0};
+            MixPipeline.Fetcher<Batch> fetch = batch -> {
+                if (!batch.toFetch.isEmpty()) {
+                    batchFetchInsertRecords(batch.toFetch);
+                }
+            };
+            MixPipeline.Formatter<Batch> format = (batch, out) -> {
+                // Process everything in exact order
+                for (InsertRef ridInBuffer : batch.refs) {
+                    if (progress[0] % 1000 == 0) {
+                        System.out.printf("\rProcessed %d / %d records.", progress[0], allRecordsId.size());
+                    }
+                    progress[0]++;
 
-            for (int i = 0; i < allRecordsId.size(); i++) {
-                int rid = allRecordsId.get(i);
-                InsertRef insertRef = new InsertRef(rid, 1);
-                if (rid >= maxResiduId ) {
-                    if (seen.add(rid)) {
-                        insertRef.sign = 1;
+                    if (ridInBuffer.rid <= maxResiduId) {
+                        writeResiduRecord(out, residu, ridInBuffer.rid);
                     } else {
-                        if (!seen.remove(rid)) {
-                            throw new IllegalStateException("ID " + rid + " was not in seen set but was marked as delete.");
-                        }
-                        insertRef.sign = -1; // If already seen, mark as delete
+                        writeInsertRecord(out, ridInBuffer);
                     }
                 }
-                processingBuffer.add(insertRef);
-
-                if (rid > maxResiduId) {
-                    insertIdsToFetch.add(insertRef);
-                }
+            };
+            List<InsertRef> processingBuffer = new ArrayList<>(BATCH_SIZE);
+            List<InsertRef> insertIdsToFetch = new ArrayList<>();
 
-                if (processingBuffer.size() >= BATCH_SIZE || i == allRecordsId.size() - 1) {
-                    // Fetch all needed insert records
-                    if (!insertIdsToFetch.isEmpty()) {
-                        batchFetchInsertRecords(insertIdsToFetch);
-                        insertIdsToFetch.clear();
+            try (MixPipeline<Batch> pipeline = new MixPipeline<>(mixPipelineDepth, fetch, format, writer)) {
+                for (int i = 0; i < allRecordsId.size(); i++) {
+                    int rid = allRecordsId.get(i);
+                    InsertRef insertRef = new InsertRef(rid, 1);
+                    if (rid >= maxResiduId ) {
+                        if (seen.add(rid)) {
+                            insertRef.sign = 1;
+                        } else {
+                            if (!seen.remove(rid)) {
+                                throw new IllegalStateException("ID " + rid + " was not in seen set but was marked as delete.");
+                            }
+                            insertRef.sign = -1; // If already seen, mark as delete
+                        }
                     }
+                    processingBuffer.add(insertRef);
 
-                    // Process everything in exact order
-                    for (InsertRef ridInBuffer : processingBuffer) {
-                        if (progress % 1000 == 0) {
-                            System.out.printf("\rProcessed %d / %d records.", progress, allRecordsId.size());
-                        }
-                        progress++;
+                    if (rid > maxResiduId) {
+                        insertIdsToFetch.add(insertRef);
+                    }
 
-                        if (ridInBuffer.rid <= maxResiduId) {
-                            writeResiduRecord(writer, sb, residu, ridInBuffer.rid);
-                        } else {
-                            writeInsertRecord(writer, sb, ridInBuffer);
-                        }
+                    if (processingBuffer.size() >= BATCH_SIZE || i == allRecordsId.size() - 1) {
+                        pipeline.submit(new Batch(processingBuffer, insertIdsToFetch));
+                        processingBuffer = new ArrayList<>(BATCH_SIZE);
+                        insertIdsToFetch = new ArrayList<>();
                     }
-                    processingBuffer.clear();
                 }
+                pipeline.finish();
             }
 
             if (!seen.isEmpty()) {
@@ -168,12 +217,14 @@ public class MixInMemoryCAIDADB {
             }
         }
 
+        writeCount(finalStreamFile, allRecordsId.size());
+    }
+
+    private void writeCount(String finalStreamFile, long count) throws IOException {
         File countFile = new File(new File(finalStreamFile).getParent(), "count.txt");
         try (BufferedWriter countWriter = new BufferedWriter(new FileWriter(countFile))) {
-            countWriter.write(String.valueOf(allRecordsId.size()));
+            countWriter.write(String.valueOf(count));
         }
-
-
     }
 
     private void loadInsertsIntoDuckDB(String insertFile) throws SQLException {
@@ -263,6 +314,13 @@ public class MixInMemoryCAIDADB {
 
 
     private void batchFetchInsertRecords(List<InsertRef> ids) throws SQLException {
+        if (insertStore != null) {
+            for (InsertRef ref : ids) {
+                insertRecordCache.put(ref, insertStore.fetch(ref.rid, new String[7]));
+            }
+            return;
+        }
+
         Set<Integer> uniqueIds = new HashSet<>();
         for (InsertRef ref : ids) {
             uniqueIds.add(ref.rid);
@@ -321,13 +379,13 @@ public class MixInMemoryCAIDADB {
 //        }
 //    }
 
-    private void putInList(ArrayList<Integer> allRecordsId, ArrayList<String[]> residu) {
+    private void putInList(RecordIdList allRecordsId, DictionaryRecordStore residu) {
         for (int r = 0; r < residu.size(); r++) {
             allRecordsId.add(r);
         }
     }
 
-    private void putInListFromDB(ArrayList<Integer> allRecordsId) throws SQLException {
+    private void putInListFromDB(RecordIdList allRecordsId) throws SQLException {
         try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT id FROM inserts")) {
             while (rs.next()) {
@@ -336,36 +394,31 @@ public class MixInMemoryCAIDADB {
         }
     }
 
-    public int readDataset(String filePath, ArrayList<String[]> dataset, boolean isNoise) throws IOException {
+    public int readDataset(String filePath, DictionaryRecordStore dataset, boolean isNoise) throws IOException {
         BufferedReader reader = new BufferedReader(new FileReader(filePath));
         int maxId = 0;
         reader.readLine();
         String line;
         while ((line = reader.readLine()) != null) {
-            String[] parts = line.split(",");
-            String[] dataPoint = new String[parts.length];
-            for (int i = 0; i < parts.length - 1; i++) {
-                dataPoint[i] = parts[i];
+            String[] parts = line.split(","); // The last field, the sign, is not stored
+            dataset.add(parts);
+            if (!isNoise && dataset.getId(dataset.size() - 1) > maxId) {
+                maxId = dataset.getId(dataset.size() - 1);
             }
-            dataPoint[dataPoint.length - 1] = String.valueOf(isNoise ? -3 : -2);
-            if (!isNoise && Integer.parseInt(dataPoint[0]) > maxId) {
-                maxId = Integer.parseInt(dataPoint[0]);
-            }
-            dataset.add(dataPoint);
         }
         reader.close();
         return maxId;
     }
 
-    private void writeResiduRecord(BufferedWriter writer, StringBuilder sb, List<String[]> residu, int rid) throws IOException {
-        String[] record = residu.get(rid);
-        if (Integer.parseInt(record[0]) != rid + 1) {
-            throw new IllegalStateException("Record ID mismatch: expected " + (rid + 1) + ", got " + record[0]);
+    private void writeResiduRecord(StringBuilder out, DictionaryRecordStore residu, int rid) {
+        if (residu.getId(rid) != rid + 1) {
+            throw new IllegalStateException("Record ID mismatch: expected " + (rid + 1) + ", got " + residu.getId(rid));
         }
-        writeRecord(writer, sb, record, 1);
+        residu.append(rid, out);
+        out.append("1").append(System.lineSeparator());
     }
 
-    private void writeInsertRecord(BufferedWriter writer, StringBuilder sb, InsertRef insertRef) throws IOException {
+    private void writeInsertRecord(StringBuilder out, InsertRef insertRef) {
         String[] record = insertRecordCache.remove(insertRef);
         if (record == null) {
             throw new IllegalStateException("Insert record not found in cache for ID: " + insertRef.rid +
@@ -374,25 +427,22 @@ public class MixInMemoryCAIDADB {
         if (Integer.parseInt(record[0]) != insertRef.rid) {
             throw new IllegalStateException("Record ID mismatch: expected " + insertRef.rid + ", got " + record[0]);
         }
-        writeRecord(writer, sb, record, insertRef.sign);
+        writeRecord(out, record, insertRef.sign);
 
     }
 
-    private void writeRecord(BufferedWriter writer, StringBuilder sb, String[] record, int sign) throws IOException {
-        sb.setLength(0);
+    private void writeRecord(StringBuilder out, String[] record, int sign) {
         for (int i = 0; i < record.length - 1; i++) {
-            sb.append(record[i]).append(',');
+            out.append(record[i]).append(',');
         }
         if (sign == 1) {
-            sb.append("1");
+            out.append("1");
         } else if (sign ==-1) {
-            sb.append("-1");
+            out.append("-1");
         } else {
             throw new IllegalArgumentException("Unexpected sign value: " + sign);
         }
-
-        writer.write(sb.toString());
-        writer.newLine();
+        out.append(System.lineSeparator());
     }
 
 
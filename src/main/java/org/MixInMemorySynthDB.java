@@ -1,20 +1,31 @@
 package org;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
 
 import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class MixInMemorySynthDB {
     Connection conn;
-    ArrayList<Integer> allRecordsId;
-    HashSet<Integer> seen;
+    RecordIdList allRecordsId; // Order of the final stream: noise ids twice, then residu positions
+    long mixSeed;
+    String mixOrder;
+    InsertStateTracker seen; // Noise ids inserted but not yet deleted
     double sizeFactor;
-    private final Map<InsertRef, int[]> insertRecordCache = new HashMap<>();
+    int mixPipelineDepth;
+    // Filled by the fetch stage of the pipeline, drained by its format stage
+    private final Map<InsertRef, int[]> insertRecordCache = new ConcurrentHashMap<>();
+    private int[] residuRecord = new int[0]; // Reused while writing residu records
     private final int BATCH_SIZE = 100000;
+    private long insertLimit = -1; // Number of noise records to load from a shared sweep file, -1 for all
+    private long combinedResiduSize = -1; // 2^sizeFactor while mixing a combined syntheticDataset_* file, else -1
+    private final boolean mixFromCombined;
 
     static class InsertRef {
         int rid;
@@ -39,10 +50,25 @@ public class MixInMemorySynthDB {
         }
     }
 
+    // The records of one batch in stream order, and those of them that are fetched from the inserts
+    static class Batch {
+        final List<InsertRef> refs;
+        final List<InsertRef> toFetch;
+
+        Batch(List<InsertRef> refs, List<InsertRef> toFetch) {
+            this.refs = refs;
+            this.toFetch = toFetch;
+        }
+    }
+
 
 
     public MixInMemorySynthDB(Config config) throws IOException, SQLException {
         sizeFactor = config.sizeFactor;
+        mixSeed = config.mixSeed;
+        mixOrder = config.mixOrder;
+        mixFromCombined = config.mixFromCombined;
+        mixPipelineDepth = config.mixPipelineDepth;
         conn = DriverManager.getConnection("jdbc:duckdb:" + config.readFolder + "tmp/mix_in_memory.db");
         String synthRootFolderName = config.readFolder + "input/data/synthFromDisk/" + sizeFactor+"/3.0";
         System.out.println("synthRootFolder: " + synthRootFolderName);
@@ -52,7 +78,7 @@ public class MixInMemorySynthDB {
             throw new IOException("Synth folder does not exist: " + synthRootFolder.getAbsolutePath());
         }
 
-        Pattern pattern = Pattern.compile("residu(.*)\\.csv");
+        Pattern pattern = Pattern.compile("residu(.*)\\.(csv|bin)");
         processFolderRecursively(synthRootFolder, pattern, config.zipfAlpha);
     }
 
@@ -69,12 +95,30 @@ public class MixInMemorySynthDB {
         for (File file : files) {
             if (file.isDirectory()) {
                 processFolderRecursively(file, pattern, zipfAlpha);
+            } else if (mixFromCombined) {
+                CombinedDataset dataset = CombinedDataset.of(file.getAbsolutePath());
+                if (dataset != null) {
+                    // Residu and inserts are both filtered from the generator output, its deletes are not needed
+                    String finalStreamFile = new File(folder, "final_stream_spread_out" + dataset.getSuffix() + ".csv").getAbsolutePath();
+                    combinedResiduSize = (long) Math.pow(2, sizeFactor);
+                    mixFiles(dataset.getFilePath(), dataset.getPerc() > 0 ? dataset.getFilePath() : null, finalStreamFile, dataset.getPerc());
+                    combinedResiduSize = -1;
+                }
             } else {
+                Matcher manifestMatcher = DatasetManifest.FILE_PATTERN.matcher(file.getName());
+                if (manifestMatcher.matches()) {
+                    DatasetManifest manifest = DatasetManifest.read(file);
+                    String finalStreamFile = new File(folder.getParent(), "final_stream_spread_out" + manifestMatcher.group(1) + ".csv").getAbsolutePath();
+                    insertLimit = manifest.noiseRecords;
+                    mixFiles(manifest.residuFile, manifest.noiseRecords > 0 ? manifest.noiseInsertsFile : null, finalStreamFile, manifest.perc);
+                    insertLimit = -1;
+                    break;
+                }
                 Matcher matcher = pattern.matcher(file.getName());
                 if (matcher.matches()) {
                     suffix = matcher.group(1);
                     residuFile = file.getAbsolutePath();
-                    insertFile = new File(folder, "noise_inserts" + suffix + ".csv").getAbsolutePath();
+                    insertFile = new File(folder, "noise_inserts" + suffix + "." + matcher.group(2)).getAbsolutePath();
                     foundResidu = true;
                     break;
                 }
@@ -89,7 +133,7 @@ public class MixInMemorySynthDB {
             boolean hasInserts = new File(insertFile).exists();
             double perc = 0.0;
             if (hasInserts) {
-                perc = Double.parseDouble(insertFile.split(zipfAlpha + "_0_")[1].split(".csv")[0]);
+                perc = Double.parseDouble(insertFile.split(zipfAlpha + "_0_")[1].split("\\.(csv|bin)")[0]);
             }
 
             String finalStreamFile = new File(folder.getParent(), "final_stream_spread_out" + suffix + ".csv").getAbsolutePath();
@@ -101,26 +145,50 @@ public class MixInMemorySynthDB {
     private void mixFiles(String residuFile, String insertFile, String finalStreamFile, double perc) throws IOException, SQLException {
         int insertSize = (int) (perc * Math.pow(2, sizeFactor));
         int insertRecordSize = 11;
-        this.allRecordsId = new ArrayList<>((int) (2 * insertSize));
+        boolean permutation = "permutation".equals(mixOrder);
+        int minNoiseId = 0;
+        long numNoise = 0;
+        if (!permutation) {
+            this.allRecordsId = new RecordIdList(2L * insertSize + (long) Math.pow(2, sizeFactor));
+        }
 
         if (insertFile != null) {
-            seen = new HashSet<>((int) (1000));
             loadInsertsIntoDuckDB(insertFile);
-            putInListFromDB(allRecordsId);
-            allRecordsId.addAll(allRecordsId);
+            if (permutation) {
+                // Noise record k of the permutation is id minNoiseId + k, so the ids must be dense
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT min(id), max(id), count(*) FROM inserts")) {
+                    rs.next();
+                    minNoiseId = rs.getInt(1);
+                    numNoise = rs.getLong(3);
+                    if (numNoise > 0 && rs.getLong(2) - minNoiseId + 1 != numNoise) {
+                        throw new IllegalStateException("mixOrder permutation needs consecutive noise ids, got " + numNoise
+                                + " ids in [" + minNoiseId + ", " + rs.getLong(2) + "]");
+                    }
+                }
+            } else {
+                putInListFromDB(allRecordsId);
+                allRecordsId.duplicate(0);
+                seen = InsertStateTracker.forIds(allRecordsId, 0, allRecordsId.size() / 2);
+            }
         }
 
-        ArrayList<int[]> residu = new ArrayList<>();
-
-        int maxResiduId = readDataset(residuFile, residu, false);
-        putInList(allRecordsId, residu);
+        OffHeapRecordStore residu = new OffHeapRecordStore();
 
-
-        Collections.shuffle(allRecordsId, new Random(42)); // Shuffle to ensure randomness in the final stream
-        prepareStatement();
+        int maxResiduId = combinedResiduSize >= 0 ? readCombinedResidu(residuFile, residu) : readDataset(residuFile, residu, false);
+        PermutedMixOrder permuted = null;
+        if (permutation) {
+            permuted = new PermutedMixOrder(residu.size(), numNoise, mixSeed);
+        } else {
+            putInList(allRecordsId, residu);
+            allRecordsId.shuffle(new Random(mixSeed)); // Shuffle to ensure randomness in the final stream
+        }
+        long numRecords = permuted != null ? permuted.size() : allRecordsId.size();
+        if (insertFile != null) {
+            prepareStatement(); // The inserts table only exists once noise has been loaded
+        }
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(finalStreamFile))) {
             writer.write("id,attr1,attr2,attr3,attr4,attr5,attr6,attr7,attr8,attr9,sign\n");
-            StringBuilder sb = new StringBuilder(256);
 //
 //            int progress = 0;
 //            for (int rid : allRecordsId) {
@@ -166,54 +234,68 @@ public class MixInMemorySynthDB {
 //                writer.newLine();
 //            }
 
-            int progress = 0;
+            long[] progress = {0};
+            MixPipeline.Fetcher<Batch> fetch = batch -> {
+                if (!batch.toFetch.isEmpty()) {
+                    batchFetchInsertRecords(batch.toFetch);
+                }
+            };
+            MixPipeline.Formatter<Batch> format = (batch, out) -> {
+                // Process everything in exact order
+                for (InsertRef ridInBuffer : batch.refs) {
+                    if (progress[0] % 100000 == 0) {
+                        System.out.printf("\rProcessed %d / %d records.", progress[0], numRecords);
+                    }
+                    progress[0]++;
+
+                    if (ridInBuffer.rid <= maxResiduId) {
+                        writeResiduRecord(out, residu, ridInBuffer.rid);
+                    } else {
+                        writeInsertRecord(out, ridInBuffer);
+                    }
+                }
+            };
             List<InsertRef> processingBuffer = new ArrayList<>(BATCH_SIZE);
             List<InsertRef> insertIdsToFetch = new ArrayList<>();
 
-            for (int i = 0; i < allRecordsId.size(); i++) {
-                int rid = allRecordsId.get(i);
-                InsertRef insertRef = new InsertRef(rid, 1);
-                if (rid >= maxResiduId ) {
-                    if (seen.add(rid)) {
-                        insertRef.sign = 1;
+            try (MixPipeline<Batch> pipeline = new MixPipeline<>(mixPipelineDepth, fetch, format, writer)) {
+                for (long i = 0; i < numRecords; i++) {
+                    InsertRef insertRef;
+                    int rid;
+                    if (permuted != null) {
+                        long slot = permuted.slot(i);
+                        rid = permuted.isResidu(slot) ? (int) slot : minNoiseId + (int) permuted.noiseIndex(slot);
+                        insertRef = new InsertRef(rid, permuted.isResidu(slot) || permuted.isInsert(i, slot) ? 1 : -1);
                     } else {
-                        if (!seen.remove(rid)) {
-                            throw new IllegalStateException("ID " + rid + " was not in seen set but was marked as delete.");
+                        rid = allRecordsId.get((int) i);
+                        insertRef = new InsertRef(rid, 1);
+                    }
+                    if (permuted == null && rid > maxResiduId) {
+                        if (seen.add(rid)) {
+                            insertRef.sign = 1;
+                        } else {
+                            if (!seen.remove(rid)) {
+                                throw new IllegalStateException("ID " + rid + " was not in seen set but was marked as delete.");
+                            }
+                            insertRef.sign = -1; // If already seen, mark as delete
                         }
-                        insertRef.sign = -1; // If already seen, mark as delete
                     }
-                }
-                processingBuffer.add(insertRef);
-
-                if (rid > maxResiduId) {
-                    insertIdsToFetch.add(insertRef);
-                }
+                    processingBuffer.add(insertRef);
 
-                if (processingBuffer.size() >= BATCH_SIZE || i == allRecordsId.size() - 1) {
-                    // Fetch all needed insert records
-                    if (!insertIdsToFetch.isEmpty()) {
-                        batchFetchInsertRecords(insertIdsToFetch);
-                        insertIdsToFetch.clear();
+                    if (rid > maxResiduId) {
+                        insertIdsToFetch.add(insertRef);
                     }
 
-                    // Process everything in exact order
-                    for (InsertRef ridInBuffer : processingBuffer) {
-                        if (progress % 100000 == 0) {
-                            System.out.printf("\rProcessed %d / %d records.", progress, allRecordsId.size());
-                        }
-                        progress++;
-
-                        if (ridInBuffer.rid <= maxResiduId) {
-                            writeResiduRecord(writer, sb, residu, ridInBuffer.rid);
-                        } else {
-                            writeInsertRecord(writer, sb, ridInBuffer);
-                        }
+                    if (processingBuffer.size() >= BATCH_SIZE || i == numRecords - 1) {
+                        pipeline.submit(new Batch(processingBuffer, insertIdsToFetch));
+                        processingBuffer = new ArrayList<>(BATCH_SIZE);
+                        insertIdsToFetch = new ArrayList<>();
                     }
-                    processingBuffer.clear();
                 }
+                pipeline.finish();
             }
 
-            if (!seen.isEmpty()) {
+            if (seen != null && !seen.isEmpty()) {
                 throw new IllegalStateException("Seen set should be empty after processing all records.");
             }
             if (!insertRecordCache.isEmpty()) {
@@ -222,7 +304,7 @@ public class MixInMemorySynthDB {
         }
     }
 
-    private void loadInsertsIntoDuckDB(String insertFile) throws SQLException {
+    private void loadInsertsIntoDuckDB(String insertFile) throws IOException, SQLException {
         try (var stmt = conn.createStatement()) {
             stmt.execute("CREATE TABLE IF NOT EXISTS inserts (" +
                     "id INTEGER, attr1 INTEGER, attr2 INTEGER, attr3 INTEGER, attr4 INTEGER, " +
@@ -230,12 +312,41 @@ public class MixInMemorySynthDB {
                     "sign INTEGER)");
             stmt.execute("DELETE FROM inserts");
             stmt.execute("DROP INDEX IF EXISTS idx_inserts_id");
-            stmt.execute(String.format("COPY inserts FROM '%s' (AUTO_DETECT TRUE, HEADER FALSE)", insertFile));
+            if (BinaryRecordReader.isBinary(insertFile)) {
+                appendBinaryInserts(insertFile);
+            } else if (combinedResiduSize >= 0) {
+                stmt.execute(String.format("INSERT INTO inserts SELECT * FROM read_csv('%s', HEADER = TRUE) WHERE sign = 1 AND id >= %d",
+                        insertFile, combinedResiduSize));
+            } else if (insertLimit >= 0) {
+                // Shared sweep noise has a header and holds the noise of the largest percentage
+                stmt.execute(String.format("INSERT INTO inserts SELECT * FROM read_csv('%s', HEADER = TRUE) LIMIT %d", insertFile, insertLimit));
+            } else {
+                stmt.execute(String.format("COPY inserts FROM '%s' (AUTO_DETECT TRUE, HEADER FALSE)", insertFile));
+            }
 
             stmt.execute("CREATE INDEX idx_inserts_id ON inserts (id)");
         }
     }
 
+    // Binary rows are appended directly, DuckDB does not have to parse any text
+    private void appendBinaryInserts(String insertFile) throws IOException, SQLException {
+        try (BinaryRecordReader reader = new BinaryRecordReader(insertFile);
+             DuckDBAppender appender = conn.unwrap(DuckDBConnection.class).createAppender(DuckDBConnection.DEFAULT_SCHEMA, "inserts")) {
+            int numFields = reader.getNumFields();
+            long numRecords = insertLimit >= 0 ? Math.min(insertLimit, reader.getRecordCount()) : reader.getRecordCount();
+            for (long row = 0; row < numRecords; row++) {
+                if (combinedResiduSize >= 0 && (reader.getInt(row, numFields - 1) != 1 || reader.getInt(row, 0) < combinedResiduSize)) {
+                    continue; // Residu or delete row of a combined file
+                }
+                appender.beginRow();
+                for (int field = 0; field < numFields; field++) {
+                    appender.append(reader.getInt(row, field));
+                }
+                appender.endRow();
+            }
+        }
+    }
+
     private PreparedStatement fetchInsertStmt;
 
     private void prepareStatement() throws SQLException {
@@ -322,13 +433,13 @@ public class MixInMemorySynthDB {
 //        }
 //    }
 
-    private void putInList(ArrayList<Integer> allRecordsId, ArrayList<int[]> residu) {
+    private void putInList(RecordIdList allRecordsId, OffHeapRecordStore residu) {
         for (int r = 0; r < residu.size(); r++) {
             allRecordsId.add(r);
         }
     }
 
-    private void putInListFromDB(ArrayList<Integer> allRecordsId) throws SQLException {
+    private void putInListFromDB(RecordIdList allRecordsId) throws SQLException {
         try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT id FROM inserts")) {
             while (rs.next()) {
@@ -337,7 +448,23 @@ public class MixInMemorySynthDB {
         }
     }
 
-    public int readDataset(String filePath, ArrayList<int[]> dataset, boolean isNoise) throws IOException {
+    public int readDataset(String filePath, OffHeapRecordStore dataset, boolean isNoise) throws IOException {
+        if (BinaryRecordReader.isBinary(filePath)) {
+            int maxId = 0;
+            try (BinaryRecordReader reader = new BinaryRecordReader(filePath)) {
+                int numFields = reader.getNumFields();
+                int[] dataPoint = new int[numFields];
+                for (long row = 0; row < reader.getRecordCount(); row++) {
+                    reader.readRecord(row, dataPoint, 0, numFields - 1);
+                    dataPoint[numFields - 1] = isNoise ? -3 : -2;
+                    if (!isNoise && dataPoint[0] > maxId) {
+                        maxId = dataPoint[0];
+                    }
+                    dataset.add(dataPoint);
+                }
+            }
+            return maxId;
+        }
         BufferedReader reader = new BufferedReader(new FileReader(filePath));
         int maxId = 0;
         reader.readLine();
@@ -358,15 +485,33 @@ public class MixInMemorySynthDB {
         return maxId;
     }
 
-    private void writeResiduRecord(BufferedWriter writer, StringBuilder sb, List<int[]> residu, int rid) throws IOException {
-        int[] record = residu.get(rid);
-        if (record[0] != rid + 1) {
-            throw new IllegalStateException("Record ID mismatch: expected " + (rid + 1) + ", got " + record[0]);
+    private int readCombinedResidu(String filePath, OffHeapRecordStore dataset) throws IOException {
+        int[] maxId = {0};
+        CombinedDataset.of(filePath).forEachRow(row -> {
+            if (row[row.length - 1] == 1 && row[0] < combinedResiduSize) {
+                int[] dataPoint = row.clone();
+                dataPoint[dataPoint.length - 1] = -2;
+                maxId[0] = Math.max(maxId[0], dataPoint[0]);
+                dataset.add(dataPoint);
+            }
+        });
+        return maxId[0];
+    }
+
+    private void writeResiduRecord(StringBuilder out, OffHeapRecordStore residu, int rid) {
+        if (residuRecord.length != residu.getStride()) {
+            residuRecord = new int[residu.getStride()];
+        }
+        int[] record = residu.get(rid, residuRecord);
+        // CSV residu files lose their first row to the header skip, binary files start at id 0
+        int expectedId = rid + residu.getInt(0, 0);
+        if (record[0] != expectedId) {
+            throw new IllegalStateException("Record ID mismatch: expected " + expectedId + ", got " + record[0]);
         }
-        writeRecord(writer, sb, record, 1);
+        writeRecord(out, record, 1);
     }
 
-    private void writeInsertRecord(BufferedWriter writer, StringBuilder sb, InsertRef insertRef) throws IOException {
+    private void writeInsertRecord(StringBuilder out, InsertRef insertRef) {
         int[] record = insertRecordCache.remove(insertRef);
         if (record == null) {
             throw new IllegalStateException("Insert record not found in cache for ID: " + insertRef.rid +
@@ -375,25 +520,22 @@ public class MixInMemorySynthDB {
         if (record[0] != insertRef.rid) {
             throw new IllegalStateException("Record ID mismatch: expected " + insertRef.rid + ", got " + record[0]);
         }
-        writeRecord(writer, sb, record, insertRef.sign);
+        writeRecord(out, record, insertRef.sign);
 
     }
 
-    private void writeRecord(BufferedWriter writer, StringBuilder sb, int[] record, int sign) throws IOException {
-        sb.setLength(0);
+    private void writeRecord(StringBuilder out, int[] record, int sign) {
         for (int i = 0; i < record.length - 1; i++) {
-            sb.append(record[i]).append(',');
+            out.append(record[i]).append(',');
         }
         if (sign == 1) {
-            sb.append("1");
+            out.append("1");
         } else if (sign ==-1) {
-            sb.append("-1");
+            out.append("-1");
         } else {
             throw new IllegalArgumentException("Unexpected sign value: " + sign);
         }
-
-        writer.write(sb.toString());
-        writer.newLine();
+        out.append(System.lineSeparator());
     }
 
 
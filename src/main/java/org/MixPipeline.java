@@ -0,0 +1,197 @@
+package org;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches of the DB mixers go through a fetch, a format and a write stage, each on its own thread and
+ * connected by bounded queues, while the calling thread decides the signs of the next batches. So
+ * batch N+1 is fetched while batch N is formatted and batch N-1 is written. Every stage takes the
+ * batches in submission order, the output is the one of the sequential loop.
+ * A failure in any stage stops the pipeline and is rethrown by submit or finish.
+ */
+public class MixPipeline<B> implements AutoCloseable {
+    public interface Fetcher<B> {
+        void fetch(B batch) throws Exception;
+    }
+
+    public interface Formatter<B> {
+        void format(B batch, StringBuilder out) throws Exception;
+    }
+
+    private static final Object END = new Object();
+    private static final int WRITE_CHUNK = 1 << 13;
+
+    private final Fetcher<B> fetcher;
+    private final Formatter<B> formatter;
+    private final Writer writer;
+    private final BlockingQueue<Object> fetchQueue;
+    private final BlockingQueue<Object> formatQueue;
+    private final BlockingQueue<Object> writeQueue;
+    private final BlockingQueue<StringBuilder> freeBuilders; // Formatted batches are recycled after writing
+    private final Thread[] threads;
+    private volatile Throwable failure;
+    private boolean finished;
+
+    /**
+     * @param depth number of batches that can wait between two stages
+     */
+    public MixPipeline(int depth, Fetcher<B> fetcher, Formatter<B> formatter, Writer writer) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Pipeline depth must be at least 1, got " + depth);
+        }
+        this.fetcher = fetcher;
+        this.formatter = formatter;
+        this.writer = writer;
+        this.fetchQueue = new ArrayBlockingQueue<>(depth);
+        this.formatQueue = new ArrayBlockingQueue<>(depth);
+        this.writeQueue = new ArrayBlockingQueue<>(depth);
+        this.freeBuilders = new ArrayBlockingQueue<>(depth + 2);
+        for (int i = 0; i < depth + 2; i++) {
+            freeBuilders.add(new StringBuilder(1 << 16));
+        }
+        this.threads = new Thread[]{
+                new Thread(this::fetchStage, "mix-fetch"),
+                new Thread(this::formatStage, "mix-format"),
+                new Thread(this::writeStage, "mix-write")
+        };
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Hands a decided batch to the fetch stage, blocks while the pipeline is full.
+     */
+    public void submit(B batch) throws IOException {
+        put(fetchQueue, batch);
+        checkFailure();
+    }
+
+    /**
+     * Waits until every submitted batch is written (the writer is not closed).
+     */
+    public void finish() throws IOException {
+        put(fetchQueue, END);
+        for (Thread thread : threads) {
+            try {
+                while (thread.isAlive()) {
+                    thread.join(100);
+                    checkFailure();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the mixing pipeline", e);
+            }
+        }
+        checkFailure();
+        finished = true;
+    }
+
+    @Override
+    public void close() {
+        if (!finished) {
+            fail(new IllegalStateException("Pipeline closed before finish"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetchStage() {
+        try {
+            Object batch;
+            while ((batch = take(fetchQueue)) != END) {
+                fetcher.fetch((B) batch);
+                put(formatQueue, batch);
+            }
+            put(formatQueue, END);
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void formatStage() {
+        try {
+            Object batch;
+            while ((batch = take(formatQueue)) != END) {
+                StringBuilder out = (StringBuilder) take(freeBuilders);
+                out.setLength(0);
+                formatter.format((B) batch, out);
+                put(writeQueue, out);
+            }
+            put(writeQueue, END);
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    private void writeStage() {
+        try {
+            char[] chunk = new char[WRITE_CHUNK];
+            Object formatted;
+            while ((formatted = take(writeQueue)) != END) {
+                StringBuilder out = (StringBuilder) formatted;
+                for (int start = 0; start < out.length(); start += WRITE_CHUNK) {
+                    int end = Math.min(out.length(), start + WRITE_CHUNK);
+                    out.getChars(start, end, chunk, 0);
+                    writer.write(chunk, 0, end - start);
+                }
+                put(freeBuilders, out);
+            }
+        } catch (Throwable t) {
+            fail(t);
+        }
+    }
+
+    // Queue operations poll so that no stage waits forever on a stage that failed
+    private <T> void put(BlockingQueue<T> queue, T item) throws IOException {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while mixing", e);
+        }
+    }
+
+    private Object take(BlockingQueue<?> queue) throws IOException {
+        try {
+            Object item;
+            while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            return item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while mixing", e);
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof IOException e) {
+            throw e;
+        }
+        if (t instanceof RuntimeException e) {
+            throw e;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        throw new IOException("Mixing pipeline failed", t);
+    }
+}
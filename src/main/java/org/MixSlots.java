@@ -0,0 +1,76 @@
+package org;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Slot model of MixInMemory.mixRecords and GenericMixer: slots [0, numResidu) are the residu rows and
+ * slot numResidu + k and numResidu + numNoise + k both noise row k, of which the copy that comes first
+ * in the stream is the insert. Stream positions map to slots through a shuffled slot list (mixOrder
+ * "shuffle", seeded by mixSeed) or a PermutedMixOrder ("permutation").
+ */
+public class MixSlots {
+    private final int numResidu;
+    private final int numNoise;
+    private final PermutedMixOrder permuted; // null for "shuffle"
+    private final RecordIdList slots;        // null for "permutation"
+    private BitSet deletes;                  // Delete positions of the shuffled list, see markDeletes
+
+    public MixSlots(int numResidu, int numNoise, String mixOrder, long seed) {
+        this.numResidu = numResidu;
+        this.numNoise = numNoise;
+        if ("permutation".equals(mixOrder)) {
+            permuted = new PermutedMixOrder(numResidu, numNoise, seed);
+            slots = null;
+        } else {
+            permuted = null;
+            slots = new RecordIdList(numResidu + 2L * numNoise);
+            slots.addRange(0, numResidu + 2 * numNoise);
+            slots.shuffle(new Random(seed));
+        }
+    }
+
+    public boolean isPermutation() {
+        return permuted != null;
+    }
+
+    public long size() {
+        return numResidu + 2L * numNoise;
+    }
+
+    public int slot(long position) {
+        return permuted != null ? (int) permuted.slot(position) : slots.get((int) position);
+    }
+
+    public boolean isResidu(int slot) {
+        return slot < numResidu;
+    }
+
+    public int noiseRow(int slot) {
+        return (slot - numResidu) % numNoise;
+    }
+
+    /**
+     * Marks the delete positions of a shuffled list in one pass, so isInsert needs no seen set and can be
+     * called from any thread and in any order. Not needed for a permutation.
+     */
+    public MixSlots markDeletes() {
+        if (permuted == null && deletes == null) {
+            deletes = numNoise > 0 ? ParallelMixer.deletePositions(slots, numResidu, numNoise) : new BitSet();
+        }
+        return this;
+    }
+
+    /**
+     * Whether the noise slot at this position is the insert of its row.
+     */
+    public boolean isInsert(long position, int slot) {
+        if (permuted != null) {
+            return permuted.isInsert(position, slot);
+        }
+        if (deletes == null) {
+            throw new IllegalStateException("Call markDeletes before asking for the sign of a shuffled position");
+        }
+        return !deletes.get((int) position);
+    }
+}
@@ -0,0 +1,92 @@
+package org;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Fixed-stride int records outside the heap, e.g. the residu of the mixers: rows of stride ints packed
+ * back to back in direct buffers of at most SEGMENT_BYTES, read by (row, column). There is no object
+ * per record, so heap use and GC work do not grow with the number of records.
+ * Direct buffers count against -XX:MaxDirectMemorySize (by default the -Xmx value), raise it for large residus.
+ */
+public class OffHeapRecordStore {
+    private static final int SEGMENT_BYTES = 1 << 30;
+
+    private final ArrayList<ByteBuffer> segments = new ArrayList<>();
+    private int stride;         // Ints per record, fixed by the first record
+    private int rowsPerSegment;
+    private int size;
+
+    public void add(int[] record) {
+        if (stride == 0) {
+            if (record.length == 0) {
+                throw new IllegalArgumentException("Records need at least one field");
+            }
+            stride = record.length;
+            rowsPerSegment = SEGMENT_BYTES / (4 * stride);
+        } else if (record.length != stride) {
+            throw new IllegalArgumentException("Expected " + stride + " fields but got " + record.length);
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("At most " + Integer.MAX_VALUE + " records");
+        }
+        int segment = size / rowsPerSegment;
+        if (segment == segments.size()) {
+            // Segments start small so small residus do not reserve a full segment
+            int rows = (int) Math.min(rowsPerSegment, Math.max(1024, 2L * size));
+            segments.add(ByteBuffer.allocateDirect(rows * 4 * stride).order(ByteOrder.nativeOrder()));
+        }
+        ByteBuffer buffer = segments.get(segment);
+        int offset = (size % rowsPerSegment) * 4 * stride;
+        if (offset + 4 * stride > buffer.capacity()) {
+            buffer = grow(segment, buffer);
+        }
+        for (int i = 0; i < stride; i++) {
+            buffer.putInt(offset + 4 * i, record[i]);
+        }
+        size++;
+    }
+
+    private ByteBuffer grow(int segment, ByteBuffer buffer) {
+        int capacity = (int) Math.min((long) rowsPerSegment * 4 * stride, 2L * buffer.capacity());
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        grown.put(0, buffer, 0, buffer.capacity());
+        segments.set(segment, grown);
+        return grown;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getInt(int row, int column) {
+        if (row < 0 || row >= size || column < 0 || column >= stride) {
+            throw new IndexOutOfBoundsException("Field (" + row + ", " + column + ") outside " + size + " x " + stride);
+        }
+        return segments.get(row / rowsPerSegment).getInt(((row % rowsPerSegment) * stride + column) * 4);
+    }
+
+    /**
+     * Copies the record into out (length at least the stride) and returns out.
+     */
+    public int[] get(int row, int[] out) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " outside [0, " + size + ")");
+        }
+        ByteBuffer buffer = segments.get(row / rowsPerSegment);
+        int offset = (row % rowsPerSegment) * 4 * stride;
+        for (int i = 0; i < stride; i++) {
+            out[i] = buffer.getInt(offset + 4 * i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,160 @@
+package org;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Writes a final stream by splitting its positions [0, numRecords) into numThreads segments of
+ * consecutive positions. Every segment is formatted by its own thread into its own file, and the
+ * segment files are concatenated behind the header; a single segment is written to the final stream
+ * directly. This only works when the record and sign at a
+ * position do not depend on the records before it (no seen set), then the output equals the one
+ * of a sequential loop over the positions.
+ */
+public class ParallelMixer {
+
+    public interface RecordFormatter {
+        /**
+         * Appends the line of the record at this stream position, line separator included.
+         */
+        void format(long position, StringBuilder out);
+    }
+
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    private final File tmpFolder;
+    private final int numThreads;
+
+    public ParallelMixer(File tmpFolder, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be positive but got " + numThreads);
+        }
+        this.tmpFolder = tmpFolder;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param formatters creates one formatter per segment, so formatters may keep scratch buffers
+     */
+    public void write(String header, long numRecords, Supplier<RecordFormatter> formatters, String finalStreamFile) throws IOException {
+        int numSegments = (int) Math.max(1, Math.min(numThreads, numRecords));
+        if (numSegments == 1) {
+            // Nothing to concatenate: format straight into the final stream on this thread
+            writeSegment(header, formatters.get(), 0, numRecords, new File(finalStreamFile));
+            return;
+        }
+        tmpFolder.mkdirs();
+        File[] segments = new File[numSegments];
+        ExecutorService executor = Executors.newFixedThreadPool(numSegments);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(numSegments);
+            for (int s = 0; s < numSegments; s++) {
+                long start = numRecords * s / numSegments;
+                long end = numRecords * (s + 1) / numSegments;
+                File segment = new File(tmpFolder, "segment_" + s + ".csv");
+                segments[s] = segment;
+                RecordFormatter formatter = formatters.get();
+                futures.add(executor.submit(() -> {
+                    writeSegment("", formatter, start, end, segment);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        concatenate(header, segments, finalStreamFile);
+    }
+
+    /**
+     * Deletes of a shuffled slot list where slots [0, numResidu) are residu records and slot numResidu + k
+     * and numResidu + numNoise + k both noise record k. The earlier of the two positions of a noise record
+     * is its insert, so one pass over the positions marks the later ones.
+     */
+    public static BitSet deletePositions(RecordIdList slots, int numResidu, int numNoise) {
+        BitSet inserted = new BitSet(numNoise);
+        BitSet deletes = new BitSet(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            if (slot >= numResidu) {
+                int k = (slot - numResidu) % numNoise;
+                if (inserted.get(k)) {
+                    deletes.set(i);
+                } else {
+                    inserted.set(k);
+                }
+            }
+        }
+        return deletes;
+    }
+
+    private static void writeSegment(String header, RecordFormatter formatter, long start, long end, File segment) throws IOException {
+        StringBuilder out = new StringBuilder(2 * FLUSH_SIZE);
+        char[] chunk = new char[0];
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(segment), StandardCharsets.UTF_8)) {
+            writer.write(header);
+            for (long position = start; position < end; position++) {
+                formatter.format(position, out);
+                if (out.length() >= FLUSH_SIZE || position == end - 1) {
+                    if (chunk.length < out.length()) {
+                        chunk = new char[out.capacity()];
+                    }
+                    out.getChars(0, out.length(), chunk, 0);
+                    writer.write(chunk, 0, out.length());
+                    out.setLength(0);
+                }
+            }
+        }
+    }
+
+    private static void concatenate(String header, File[] segments, String finalStreamFile) throws IOException {
+        try (FileChannel output = FileChannel.open(new File(finalStreamFile).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer headerBytes = ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8));
+            while (headerBytes.hasRemaining()) {
+                output.write(headerBytes);
+            }
+            for (File segment : segments) {
+                try (FileChannel input = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+                    long size = input.size();
+                    long copied = 0;
+                    while (copied < size) {
+                        copied += input.transferTo(copied, size - copied, output);
+                    }
+                }
+                segment.delete();
+            }
+        }
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while mixing segment", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IllegalStateException("Mixing segment failed", e.getCause());
+        }
+    }
+}
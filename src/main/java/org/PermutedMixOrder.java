@@ -0,0 +1,53 @@
+package org;
+
+/**
+ * Order of a final stream without an id list: output position p holds slot permutation(p), where
+ * slots [0, numResidu) are the residu records and the next 2 * numNoise slots the noise records twice
+ * (slot numResidu + k and numResidu + numNoise + k are both noise record k). The copy that comes
+ * first in the stream is the insert, the other the delete, so no seen set is needed either.
+ */
+public class PermutedMixOrder {
+    private final long numResidu;
+    private final long numNoise;
+    private final FeistelPermutation permutation;
+
+    public PermutedMixOrder(long numResidu, long numNoise, long seed) {
+        this.numResidu = numResidu;
+        this.numNoise = numNoise;
+        this.permutation = new FeistelPermutation(Math.max(numResidu + 2 * numNoise, 1), seed);
+    }
+
+    public long size() {
+        return numResidu + 2 * numNoise;
+    }
+
+    public long slot(long position) {
+        return permutation.apply(position);
+    }
+
+    /**
+     * Output position of a slot, the inverse of slot(position).
+     */
+    public long position(long slot) {
+        return permutation.inverse(slot);
+    }
+
+    public boolean isResidu(long slot) {
+        return slot < numResidu;
+    }
+
+    /**
+     * Index of the noise record in a noise slot, in [0, numNoise).
+     */
+    public long noiseIndex(long slot) {
+        return (slot - numResidu) % numNoise;
+    }
+
+    /**
+     * Whether the noise slot at this position is the insert of its record, i.e. its other copy comes later.
+     */
+    public boolean isInsert(long position, long slot) {
+        long twin = slot < numResidu + numNoise ? slot + numNoise : slot - numNoise;
+        return position < permutation.inverse(twin);
+    }
+}
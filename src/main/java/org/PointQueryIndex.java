@@ -0,0 +1,165 @@
+package org;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index over point queries: for every attribute it maps a value to the queries that
+ * constrain that attribute to that value. A record only visits the postings of its own values,
+ * so counting answers costs O(attrs + matching predicates) per record instead of O(queries * attrs).
+ * Unconstrained attributes are -1 in the queries, as in the query files.
+ */
+public class PointQueryIndex {
+    private static final int[] NO_QUERIES = new int[0];
+
+    private final int numAttrs;
+    private final int[][][] postings; // [attr][value] -> query ids
+    private final int[] numConstraints;
+    private final int[] firstAttr;
+    private final int[] alwaysMatching; // Queries without constraints match every record
+
+    private final int[] hits;
+    private final int[] touched;
+
+    private final int[] answers;
+    private final int[] union;
+
+    public PointQueryIndex(long[][] queries, int numAttrs) {
+        this.numAttrs = numAttrs;
+        int numQueries = queries.length;
+        numConstraints = new int[numQueries];
+        firstAttr = new int[numQueries];
+        hits = new int[numQueries];
+        touched = new int[numQueries];
+        answers = new int[numQueries];
+        union = new int[numQueries];
+
+        long[] maxValue = new long[numAttrs];
+        Arrays.fill(maxValue, -1);
+        int numAlwaysMatching = 0;
+        for (int q = 0; q < numQueries; q++) {
+            for (int j = 0; j < numAttrs; j++) {
+                long value = queries[q][j];
+                if (value == -1) {
+                    continue;
+                }
+                if (value < 0 || value >= Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Query " + q + " has unsupported value " + value + " for attribute " + j);
+                }
+                if (numConstraints[q]++ == 0) {
+                    firstAttr[q] = j;
+                }
+                maxValue[j] = Math.max(maxValue[j], value);
+            }
+            if (numConstraints[q] == 0) {
+                numAlwaysMatching++;
+            }
+        }
+
+        // Count postings per (attr, value) first so every posting list is allocated at its exact size
+        int[][] counts = new int[numAttrs][];
+        for (int j = 0; j < numAttrs; j++) {
+            counts[j] = new int[(int) maxValue[j] + 1];
+        }
+        for (long[] query : queries) {
+            for (int j = 0; j < numAttrs; j++) {
+                if (query[j] != -1) {
+                    counts[j][(int) query[j]]++;
+                }
+            }
+        }
+        postings = new int[numAttrs][][];
+        for (int j = 0; j < numAttrs; j++) {
+            postings[j] = new int[counts[j].length][];
+            for (int v = 0; v < counts[j].length; v++) {
+                postings[j][v] = counts[j][v] == 0 ? NO_QUERIES : new int[counts[j][v]];
+                counts[j][v] = 0;
+            }
+        }
+        alwaysMatching = new int[numAlwaysMatching];
+        numAlwaysMatching = 0;
+        for (int q = 0; q < numQueries; q++) {
+            if (numConstraints[q] == 0) {
+                alwaysMatching[numAlwaysMatching++] = q;
+            }
+            for (int j = 0; j < numAttrs; j++) {
+                long value = queries[q][j];
+                if (value != -1) {
+                    postings[j][(int) value][counts[j][(int) value]++] = q;
+                }
+            }
+        }
+    }
+
+    // Shares the postings of index but counts separately, for records counted on another thread
+    private PointQueryIndex(PointQueryIndex index) {
+        numAttrs = index.numAttrs;
+        postings = index.postings;
+        numConstraints = index.numConstraints;
+        firstAttr = index.firstAttr;
+        alwaysMatching = index.alwaysMatching;
+        int numQueries = numConstraints.length;
+        hits = new int[numQueries];
+        touched = new int[numQueries];
+        answers = new int[numQueries];
+        union = new int[numQueries];
+    }
+
+    /**
+     * Returns an index over the same queries with its own counters, see addCounts.
+     */
+    public PointQueryIndex newCounter() {
+        return new PointQueryIndex(this);
+    }
+
+    public void addCounts(PointQueryIndex other) {
+        if (other.postings != postings) {
+            throw new IllegalArgumentException("Counts belong to another set of queries");
+        }
+        for (int q = 0; q < answers.length; q++) {
+            answers[q] += other.answers[q];
+            union[q] += other.union[q];
+        }
+    }
+
+    /**
+     * Counts an (id, attrs..., sign) record: a query answers it when every constrained attribute
+     * matches. The union count keeps the semantics of the original scan, which stopped at the first
+     * mismatch: a record is in the union when the first constrained attribute of the query matches.
+     */
+    public void add(long[] record) {
+        int numTouched = 0;
+        for (int j = 0; j < numAttrs; j++) {
+            int[][] attrPostings = postings[j];
+            long value = record[j + 1];
+            if (value < 0 || value >= attrPostings.length) {
+                continue;
+            }
+            for (int q : attrPostings[(int) value]) {
+                if (hits[q]++ == 0) {
+                    touched[numTouched++] = q;
+                }
+                if (firstAttr[q] == j) {
+                    union[q]++;
+                }
+            }
+        }
+        for (int t = 0; t < numTouched; t++) {
+            int q = touched[t];
+            if (hits[q] == numConstraints[q]) {
+                answers[q]++;
+            }
+            hits[q] = 0;
+        }
+        for (int q : alwaysMatching) {
+            answers[q]++;
+        }
+    }
+
+    public int[] getAnswers() {
+        return answers;
+    }
+
+    public int[] getUnion() {
+        return union;
+    }
+}
@@ -0,0 +1,187 @@
+package org;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Set of record positions, stored as a sorted int array while it is sparse and as a
+ * bitset once more than 1 in 32 positions are set (where the bitset becomes smaller).
+ * Positions must be added in increasing order, which is the order records are read in.
+ */
+public class PositionBitmap {
+    private static final byte ARRAY = 0;
+    private static final byte BITSET = 1;
+
+    private int[] positions; // Sorted positions, null for a bitset
+    private long[] words;    // Bitset words, null for an array
+    private int cardinality;
+    private int last = -1;   // Largest position, -1 when empty
+
+    public PositionBitmap() {
+        positions = new int[4];
+    }
+
+    private PositionBitmap(int[] positions, long[] words, int cardinality) {
+        this.positions = positions;
+        this.words = words;
+        this.cardinality = cardinality;
+        if (words == null) {
+            last = cardinality > 0 ? positions[cardinality - 1] : -1;
+        } else {
+            for (int w = words.length - 1; w >= 0 && last < 0; w--) {
+                if (words[w] != 0) {
+                    last = (w << 6) + 63 - Long.numberOfLeadingZeros(words[w]);
+                }
+            }
+        }
+    }
+
+    public void add(int position) {
+        if (position <= last) {
+            throw new IllegalArgumentException("Positions must be added in increasing order, got " + position + " after " + last);
+        }
+        if (words != null) {
+            int word = position >>> 6;
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            }
+            words[word] |= 1L << position;
+            cardinality++;
+            last = position;
+            return;
+        }
+        if (cardinality == positions.length) {
+            // An array of n ints is larger than a bitset over [0, position] once n > position / 32
+            if ((long) cardinality * 32 > position) {
+                toBitset(position);
+                add(position);
+                return;
+            }
+            positions = Arrays.copyOf(positions, cardinality * 2);
+        }
+        positions[cardinality++] = position;
+        last = position;
+    }
+
+    /**
+     * Adds all positions of other, shifted by offset. They must lie after the positions in this bitmap.
+     */
+    public void addAll(PositionBitmap other, int offset) {
+        if (other.words == null) {
+            for (int i = 0; i < other.cardinality; i++) {
+                add(other.positions[i] + offset);
+            }
+            return;
+        }
+        for (int w = 0; w < other.words.length; w++) {
+            long word = other.words[w];
+            while (word != 0) {
+                add((w << 6) + Long.numberOfTrailingZeros(word) + offset);
+                word &= word - 1;
+            }
+        }
+    }
+
+    private void toBitset(int maxPosition) {
+        long[] bits = new long[(maxPosition >>> 6) + 1];
+        for (int i = 0; i < cardinality; i++) {
+            bits[positions[i] >>> 6] |= 1L << positions[i];
+        }
+        words = bits;
+        positions = null;
+    }
+
+    public int getCardinality() {
+        return cardinality;
+    }
+
+    public boolean contains(int position) {
+        if (words != null) {
+            int word = position >>> 6;
+            return word < words.length && (words[word] & (1L << position)) != 0;
+        }
+        return Arrays.binarySearch(positions, 0, cardinality, position) >= 0;
+    }
+
+    /**
+     * Returns the positions in both bitmaps. The result is an array when either input is one.
+     */
+    public PositionBitmap and(PositionBitmap other) {
+        if (words != null && other.words != null) {
+            int length = Math.min(words.length, other.words.length);
+            long[] result = new long[length];
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                result[i] = words[i] & other.words[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new PositionBitmap(null, result, count);
+        }
+        if (words != null) {
+            return other.and(this);
+        }
+        int[] result = new int[cardinality];
+        int count = 0;
+        if (other.words != null) {
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(positions[i])) {
+                    result[count++] = positions[i];
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < other.cardinality) {
+                if (positions[i] < other.positions[j]) {
+                    i++;
+                } else if (positions[i] > other.positions[j]) {
+                    j++;
+                } else {
+                    result[count++] = positions[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return new PositionBitmap(result, null, count);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        if (words != null) {
+            out.writeByte(BITSET);
+            out.writeInt(cardinality);
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        } else {
+            out.writeByte(ARRAY);
+            out.writeInt(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                out.writeInt(positions[i]);
+            }
+        }
+    }
+
+    public static PositionBitmap read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int cardinality = in.readInt();
+        if (type == BITSET) {
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return new PositionBitmap(null, words, cardinality);
+        }
+        if (type != ARRAY) {
+            throw new IOException("Unknown bitmap type " + type);
+        }
+        int[] positions = new int[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            positions[i] = in.readInt();
+        }
+        return new PositionBitmap(positions, null, cardinality);
+    }
+}
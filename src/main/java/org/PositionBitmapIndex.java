@@ -0,0 +1,203 @@
+package org;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One PositionBitmap per (attribute, value) over the positions of the records in a dataset.
+ * Built in a single pass over the data and saved next to the query file, so the exact answers
+ * of any later set of point queries on the same dataset are bitmap intersections, without a scan.
+ */
+public class PositionBitmapIndex {
+    private static final byte[] MAGIC = "OMNIBMP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private final int numAttrs;
+    private final PositionBitmap[][] bitmaps; // [attr][value], null when the value does not occur
+    private int numRecords;
+
+    public PositionBitmapIndex(int numAttrs) {
+        this.numAttrs = numAttrs;
+        this.bitmaps = new PositionBitmap[numAttrs][];
+        Arrays.setAll(bitmaps, j -> new PositionBitmap[0]);
+    }
+
+    /**
+     * Adds an (id, attrs..., sign) record at the next position.
+     */
+    public void add(long[] record) {
+        if (numRecords == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Position bitmaps support at most " + Integer.MAX_VALUE + " records");
+        }
+        int position = numRecords++;
+        for (int j = 0; j < numAttrs; j++) {
+            long value = record[j + 1];
+            if (value < 0 || value >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Unsupported value " + value + " for attribute " + j + " at position " + position);
+            }
+            PositionBitmap[] attrBitmaps = bitmaps[j];
+            if (value >= attrBitmaps.length) {
+                attrBitmaps = Arrays.copyOf(attrBitmaps, (int) Math.max(value + 1, Math.min(2L * attrBitmaps.length, Integer.MAX_VALUE)));
+                bitmaps[j] = attrBitmaps;
+            }
+            if (attrBitmaps[(int) value] == null) {
+                attrBitmaps[(int) value] = new PositionBitmap();
+            }
+            attrBitmaps[(int) value].add(position);
+        }
+    }
+
+    /**
+     * Appends the records of an index built separately, e.g. for a chunk generated on another thread.
+     */
+    public void append(PositionBitmapIndex chunk) {
+        if (chunk.numAttrs != numAttrs) {
+            throw new IllegalArgumentException("Expected " + numAttrs + " attributes but got " + chunk.numAttrs);
+        }
+        if ((long) numRecords + chunk.numRecords > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Position bitmaps support at most " + Integer.MAX_VALUE + " records");
+        }
+        for (int j = 0; j < numAttrs; j++) {
+            PositionBitmap[] chunkBitmaps = chunk.bitmaps[j];
+            if (chunkBitmaps.length > bitmaps[j].length) {
+                bitmaps[j] = Arrays.copyOf(bitmaps[j], chunkBitmaps.length);
+            }
+            for (int v = 0; v < chunkBitmaps.length; v++) {
+                if (chunkBitmaps[v] == null) {
+                    continue;
+                }
+                if (bitmaps[j][v] == null) {
+                    bitmaps[j][v] = new PositionBitmap();
+                }
+                bitmaps[j][v].addAll(chunkBitmaps[v], numRecords);
+            }
+        }
+        numRecords += chunk.numRecords;
+    }
+
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    public int getNumAttrs() {
+        return numAttrs;
+    }
+
+    /**
+     * Number of records that match every constrained (not -1) attribute of the query.
+     */
+    public int answer(long[] query) {
+        PositionBitmap[] selected = new PositionBitmap[numAttrs];
+        int numSelected = 0;
+        for (int j = 0; j < numAttrs; j++) {
+            if (query[j] == -1) {
+                continue;
+            }
+            PositionBitmap bitmap = bitmap(j, query[j]);
+            if (bitmap == null) {
+                return 0;
+            }
+            selected[numSelected++] = bitmap;
+        }
+        if (numSelected == 0) {
+            return numRecords;
+        }
+        // Intersect the smallest bitmaps first so intermediate results stay small
+        Arrays.sort(selected, 0, numSelected, (a, b) -> Integer.compare(a.getCardinality(), b.getCardinality()));
+        PositionBitmap result = selected[0];
+        for (int i = 1; i < numSelected && result.getCardinality() > 0; i++) {
+            result = result.and(selected[i]);
+        }
+        return result.getCardinality();
+    }
+
+    /**
+     * Union count as written to the query files: the number of records that match the first
+     * constrained attribute of the query (see PointQueryIndex).
+     */
+    public int union(long[] query) {
+        for (int j = 0; j < numAttrs; j++) {
+            if (query[j] != -1) {
+                PositionBitmap bitmap = bitmap(j, query[j]);
+                return bitmap == null ? 0 : bitmap.getCardinality();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reconstructs the attributes of the record at a position into out[0..numAttrs).
+     */
+    public void readRecord(int position, long[] out) {
+        if (position < 0 || position >= numRecords) {
+            throw new IndexOutOfBoundsException("Position " + position + " outside [0, " + numRecords + ")");
+        }
+        for (int j = 0; j < numAttrs; j++) {
+            out[j] = -1;
+            PositionBitmap[] attrBitmaps = bitmaps[j];
+            for (int v = 0; v < attrBitmaps.length; v++) {
+                if (attrBitmaps[v] != null && attrBitmaps[v].contains(position)) {
+                    out[j] = v;
+                    break;
+                }
+            }
+        }
+    }
+
+    private PositionBitmap bitmap(int attr, long value) {
+        PositionBitmap[] attrBitmaps = bitmaps[attr];
+        return value >= 0 && value < attrBitmaps.length ? attrBitmaps[(int) value] : null;
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numRecords);
+            out.writeInt(numAttrs);
+            for (PositionBitmap[] attrBitmaps : bitmaps) {
+                int numValues = 0;
+                for (PositionBitmap bitmap : attrBitmaps) {
+                    if (bitmap != null) numValues++;
+                }
+                out.writeInt(numValues);
+                for (int v = 0; v < attrBitmaps.length; v++) {
+                    if (attrBitmaps[v] != null) {
+                        out.writeInt(v);
+                        attrBitmaps[v].write(out);
+                    }
+                }
+            }
+        }
+    }
+
+    public static PositionBitmapIndex read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a position bitmap file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported position bitmap version " + version + " in " + file);
+            }
+            int numRecords = in.readInt();
+            PositionBitmapIndex index = new PositionBitmapIndex(in.readInt());
+            index.numRecords = numRecords;
+            for (int j = 0; j < index.numAttrs; j++) {
+                int numValues = in.readInt();
+                for (int i = 0; i < numValues; i++) {
+                    int value = in.readInt();
+                    PositionBitmap[] attrBitmaps = index.bitmaps[j];
+                    if (value >= attrBitmaps.length) {
+                        index.bitmaps[j] = attrBitmaps = Arrays.copyOf(attrBitmaps, value + 1);
+                    }
+                    attrBitmaps[value] = PositionBitmap.read(in);
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * In-memory replacement for the DuckDB inserts table of the mixers: the noise inserts of one CSV file
+ * (with header, first column the id) in a ColumnTable, one primitive ColumnCodec per column. Ids map to
+ * rows through an int array over [minId, maxId] when the ids are dense and through a primitive hash map
+ * otherwise, so fetching a record is an array access instead of a query.
+ * Values come back as the strings DuckDB's getString returns: numbers reformatted, empty fields null.
+ */
+public class PrimitiveInsertStore {
+    public enum ColumnType { INTEGER, BIGINT, VARCHAR }
+
+    // Use direct addressing while it takes at most 4 ints per row, about what the hash map needs
+    private static final long MAX_SLOTS_PER_ROW = 4;
+
+    private final ColumnTable table;
+    private final ColumnCodec.IntCodec ids;
+
+    private int minId;
+    private int[] rowOfId;              // Direct addressing, -1 for absent ids; null when sparse
+    private Int2IntOpenHashMap rowMap;  // Used when sparse
+
+    private PrimitiveInsertStore(ColumnTable table) {
+        this.table = table;
+        this.ids = (ColumnCodec.IntCodec) table.column(0);
+    }
+
+    /**
+     * Loads a CSV with a header line. Missing trailing fields are null, extra fields are ignored
+     * (like DuckDB's COPY with STRICT_MODE FALSE); fields may be double-quoted.
+     */
+    public static PrimitiveInsertStore read(String filePath, ColumnType... types) throws IOException {
+        if (types.length == 0 || types[0] != ColumnType.INTEGER) {
+            throw new IllegalArgumentException("The first column must be the INTEGER id");
+        }
+        PrimitiveInsertStore store = new PrimitiveInsertStore(ColumnTable.read(filePath, types));
+        store.buildIdMap();
+        return store;
+    }
+
+    private void buildIdMap() {
+        int numRows = table.size();
+        int maxId = Integer.MIN_VALUE;
+        minId = Integer.MAX_VALUE;
+        for (int row = 0; row < numRows; row++) {
+            if (!ids.isNull(row)) {
+                minId = Math.min(minId, ids.get(row));
+                maxId = Math.max(maxId, ids.get(row));
+            }
+        }
+        long range = (long) maxId - minId + 1;
+        if (range > 0 && range <= MAX_SLOTS_PER_ROW * numRows) {
+            rowOfId = new int[(int) range];
+            Arrays.fill(rowOfId, -1);
+        } else {
+            rowMap = new Int2IntOpenHashMap(Math.max(numRows, 16));
+            rowMap.defaultReturnValue(-1);
+        }
+        for (int row = 0; row < numRows; row++) {
+            if (ids.isNull(row)) {
+                continue;
+            }
+            if (rowOfId != null) {
+                rowOfId[ids.get(row) - minId] = row; // The last row with an id wins, like the DuckDB lookups
+            } else {
+                rowMap.put(ids.get(row), row);
+            }
+        }
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isDense() {
+        return rowOfId != null;
+    }
+
+    /**
+     * Id of the row, in file order (SELECT id FROM inserts).
+     */
+    public int id(int row) {
+        return ids.get(row);
+    }
+
+    public boolean isNullId(int row) {
+        return ids.isNull(row);
+    }
+
+    /**
+     * Fills record with the first record.length columns of the row with this id, as strings.
+     */
+    public String[] fetch(int id, String[] record) {
+        int row = row(id);
+        if (row < 0) {
+            throw new IllegalStateException("Missing insert record for ID " + id);
+        }
+        for (int c = 0; c < record.length && c < table.numColumns(); c++) {
+            record[c] = table.column(c).value(row);
+        }
+        return record;
+    }
+
+    private int row(int id) {
+        if (rowOfId == null) {
+            return rowMap.get(id);
+        }
+        long slot = (long) id - minId;
+        return slot >= 0 && slot < rowOfId.length ? rowOfId[(int) slot] : -1;
+    }
+}
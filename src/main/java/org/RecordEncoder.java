@@ -0,0 +1,54 @@
+package org;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Output side of a dataset stage: records are (id, values...) followed by a sign.
+ * Implemented by CsvRecordEncoder (text) and BinaryRecordWriter (fixed-width binary).
+ */
+public interface RecordEncoder extends Closeable {
+    String FORMAT_CSV = "csv";
+    String FORMAT_BINARY = "binary";
+
+    void writeRecord(long[] record, int sign) throws IOException;
+
+    void writeRecord(int[] record, int from, int to, int sign) throws IOException;
+
+    /**
+     * Returns an in-memory encoder of the same format, used to build chunks on worker threads.
+     */
+    RecordEncoder newChunk(int expectedRecords);
+
+    /**
+     * Appends everything written to a chunk created by newChunk.
+     */
+    void append(RecordEncoder chunk) throws IOException;
+
+    /**
+     * Opens fileName for the given format ("csv" or "binary"). The CSV header or the binary
+     * schema header is written right away; numFields counts all columns including id and sign.
+     */
+    static RecordEncoder open(String format, String fileName, String[] columns, boolean wideFields) throws IOException {
+        return open(format, fileName, columns, wideFields, true);
+    }
+
+    /**
+     * As open, but csvHeader = false leaves out the CSV header line, like the split_sets files
+     * written by splitInsertsAndDeletesODC.sh. Binary files always carry their schema header.
+     */
+    static RecordEncoder open(String format, String fileName, String[] columns, boolean wideFields, boolean csvHeader) throws IOException {
+        if (FORMAT_BINARY.equals(format)) {
+            return BinaryRecordWriter.open(fileName, columns, wideFields ? Long.BYTES : Integer.BYTES);
+        }
+        CsvRecordEncoder encoder = CsvRecordEncoder.open(fileName);
+        if (csvHeader) {
+            encoder.writeLine(String.join(",", columns));
+        }
+        return encoder;
+    }
+
+    static String extension(String format) {
+        return FORMAT_BINARY.equals(format) ? ".bin" : ".csv";
+    }
+}
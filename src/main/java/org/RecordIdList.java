@@ -0,0 +1,84 @@
+package org;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Growable list of record ids (or slots) in a plain int array, used by the mixers for the order of
+ * the final stream. Four bytes per entry instead of a boxed Integer plus reference in an ArrayList.
+ */
+public class RecordIdList {
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 8; // Largest array most VMs allocate
+
+    private int[] ids;
+    private int size;
+
+    public RecordIdList(long expectedSize) {
+        if (expectedSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Cannot mix more than " + MAX_SIZE + " records, got " + expectedSize);
+        }
+        ids = new int[(int) Math.max(expectedSize, 16)];
+    }
+
+    public void add(int id) {
+        if (size == ids.length) {
+            grow(size + 1L);
+        }
+        ids[size++] = id;
+    }
+
+    /**
+     * Adds start, start + 1, ..., start + count - 1.
+     */
+    public void addRange(int start, int count) {
+        if (size + (long) count > ids.length) {
+            grow(size + (long) count);
+        }
+        for (int i = 0; i < count; i++) {
+            ids[size++] = start + i;
+        }
+    }
+
+    /**
+     * Appends ids [from, size) a second time, e.g. so every noise record is mixed in as insert and as delete.
+     */
+    public void duplicate(int from) {
+        int count = size - from;
+        if (size + (long) count > ids.length) {
+            grow(size + (long) count);
+        }
+        System.arraycopy(ids, from, ids, size, count);
+        size += count;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside [0, " + size + ")");
+        }
+        return ids[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * In-place Fisher-Yates shuffle. Makes the same swaps as Collections.shuffle(list, random) on an
+     * ArrayList with the same contents, so seeded mixes keep producing the same stream.
+     */
+    public void shuffle(Random random) {
+        for (int i = size; i > 1; i--) {
+            int j = random.nextInt(i);
+            int tmp = ids[i - 1];
+            ids[i - 1] = ids[j];
+            ids[j] = tmp;
+        }
+    }
+
+    private void grow(long minSize) {
+        if (minSize > MAX_SIZE) {
+            throw new IllegalStateException("Cannot mix more than " + MAX_SIZE + " records");
+        }
+        ids = Arrays.copyOf(ids, (int) Math.min(Math.max(minSize, 2L * ids.length), MAX_SIZE));
+    }
+}
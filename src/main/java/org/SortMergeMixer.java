@@ -0,0 +1,58 @@
+package org;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Mixes by position instead of by fetch: every source record is read once, in file order, and gets
+ * its output position(s) from a PermutedMixOrder (the i-th residu record is slot i, the k-th noise
+ * record slots numResidu + k and numResidu + numNoise + k). The (position, record) pairs are then
+ * sorted externally by position and written out, so input and output are both sequential and no
+ * record is ever looked up. The stream equals the one MixInMemory.mixRecords writes for mixOrder
+ * "permutation" with the same seed and input files.
+ */
+public class SortMergeMixer extends ExternalShuffleMixer {
+    private final PermutedMixOrder order;
+    private final long numResidu;
+    private final long numNoise;
+    private final long keyStride; // Spreads positions [0, size) over the unsigned key range
+    private long residuAdded;
+    private long noiseAdded;
+
+    public SortMergeMixer(File tmpFolder, long memoryBudgetBytes, long numResidu, long numNoise, int numFields, long seed) {
+        super(tmpFolder, memoryBudgetBytes, numResidu + 2 * numNoise, numFields, seed);
+        this.order = new PermutedMixOrder(numResidu, numNoise, seed);
+        this.numResidu = numResidu;
+        this.numNoise = numNoise;
+        this.keyStride = Long.divideUnsigned(-1L, Math.max(order.size(), 1));
+    }
+
+    @Override
+    public void addResidu(int[] row) throws IOException {
+        if (residuAdded == numResidu) {
+            throw new IllegalStateException("More than the expected " + numResidu + " residu records");
+        }
+        scatter(order.position(residuAdded++) * keyStride, row, 1);
+    }
+
+    @Override
+    public void addNoise(int[] row) throws IOException {
+        if (noiseAdded == numNoise) {
+            throw new IllegalStateException("More than the expected " + numNoise + " noise records");
+        }
+        long first = order.position(numResidu + noiseAdded);
+        long second = order.position(numResidu + numNoise + noiseAdded);
+        noiseAdded++;
+        scatter(Math.min(first, second) * keyStride, row, 1);
+        scatter(Math.max(first, second) * keyStride, row, -1);
+    }
+
+    @Override
+    public long mix(String header, String finalStreamFile) throws IOException {
+        if (residuAdded != numResidu || noiseAdded != numNoise) {
+            throw new IllegalStateException("Expected " + numResidu + " residu and " + numNoise + " noise records but got "
+                    + residuAdded + " and " + noiseAdded);
+        }
+        return super.mix(header, finalStreamFile);
+    }
+}
@@ -0,0 +1,277 @@
+package org;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java counterpart of splitInsertsAndDeletesODC.sh: splits every generated dataset under
+ * synthFromDisk/zipfAlpha_{alpha}/{sizeFactor}/{perc}/ into split_sets/residu, noise_inserts and
+ * noise_deletes files. A row goes to residu if sign == 1 and id < 2^sizeFactor, to noise_inserts
+ * if sign == 1 otherwise, and to noise_deletes if sign == -1.
+ * CSV files are memory-mapped and split in newline-aligned chunks on config.numThreads threads;
+ * the output is byte for byte what the awk script writes.
+ */
+public class SplitInsertsAndDeletes {
+    private final Config config;
+
+    public SplitInsertsAndDeletes(Config config) {
+        this.config = config;
+    }
+
+    public void run() throws IOException {
+        File rootFolder = new File(config.readFolder + "/input/synthFromDisk/zipfAlpha_" + config.zipfAlpha + "/" + (double) config.sizeFactor);
+        System.out.println("Using ROOT_FOLDER: " + rootFolder.getAbsolutePath());
+        if (!rootFolder.isDirectory()) {
+            throw new IOException("Root folder does not exist: " + rootFolder.getAbsolutePath());
+        }
+        for (File inputFile : findDatasets(rootFolder)) {
+            split(inputFile);
+        }
+    }
+
+    private List<File> findDatasets(File rootFolder) {
+        List<File> datasets = new ArrayList<>();
+        File[] percFolders = rootFolder.listFiles(File::isDirectory);
+        if (percFolders == null) return datasets;
+        for (File percFolder : percFolders) {
+            File[] files = percFolder.listFiles(File::isFile);
+            if (files == null) continue;
+            for (File file : files) {
+                String name = file.getName();
+                if (name.contains("queries")) {
+                    System.out.println("Skipping queries file: " + file.getAbsolutePath());
+                } else if (name.endsWith(".csv") || BinaryRecordReader.isBinary(name)) {
+                    datasets.add(file);
+                }
+            }
+        }
+        return datasets;
+    }
+
+    public void split(File inputFile) throws IOException {
+        System.out.println("Processing file: " + inputFile.getAbsolutePath());
+        String name = inputFile.getName();
+        String extension = name.substring(name.lastIndexOf('.'));
+        String baseName = name.substring(0, name.length() - extension.length());
+        // prefix numAttrs domain sizeFactor datasetResiduSize numZipfianAttrs zipfAlpha numUniformAttrs perc
+        String[] parts = baseName.split("_");
+        if (parts.length != 9) {
+            throw new IllegalArgumentException("Unexpected dataset file name: " + name);
+        }
+        String sizeFactor = parts[3];
+        long residuSize = 1L << (int) Double.parseDouble(sizeFactor);
+        String suffix = "_" + sizeFactor + "_" + parts[5] + "_" + parts[6] + "_" + parts[7] + "_" + parts[8] + extension;
+
+        File splitFolder = new File(inputFile.getParentFile(), "split_sets");
+        if (!splitFolder.exists() && !splitFolder.mkdirs()) {
+            throw new IOException("Failed to create directory: " + splitFolder.getAbsolutePath());
+        }
+        String residuFile = new File(splitFolder, "residu" + suffix).getAbsolutePath();
+        String insertFile = new File(splitFolder, "noise_inserts" + suffix).getAbsolutePath();
+        String deleteFile = new File(splitFolder, "noise_deletes" + suffix).getAbsolutePath();
+
+        if (BinaryRecordReader.isBinary(name)) {
+            splitBinary(inputFile.getAbsolutePath(), residuSize, residuFile, insertFile, deleteFile);
+        } else {
+            splitCsv(inputFile, residuSize, residuFile, insertFile, deleteFile);
+        }
+    }
+
+    // Lines of one input chunk, sorted into the three outputs
+    private static class SplitChunk {
+        final CsvRecordEncoder[] outputs = new CsvRecordEncoder[3];
+        final long[] lines = new long[3];
+    }
+
+    private static final int RESIDU = 0;
+    private static final int INSERTS = 1;
+    private static final int DELETES = 2;
+
+    private void splitCsv(File inputFile, long residuSize, String residuFile, String insertFile, String deleteFile) throws IOException {
+        String[] fileNames = {residuFile, insertFile, deleteFile};
+        // Like awk's print >, an output file is only created once a line goes to it
+        CsvRecordEncoder[] outputs = new CsvRecordEncoder[3];
+        long[] lines = new long[3];
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            long[] boundaries = chunkBoundaries(channel, config.splitChunkBytes);
+            int numChunks = boundaries.length - 1;
+            // One "record" per input chunk: chunks are parsed in parallel and written in input order
+            ChunkedDatasetGenerator chunks = new ChunkedDatasetGenerator(config.numThreads, 1);
+            chunks.generate(numChunks, 0, (chunk, start, end, seed) ->
+                    splitChunk(channel, boundaries[(int) start], boundaries[(int) start + 1], residuSize), split -> {
+                for (int k = 0; k < 3; k++) {
+                    if (split.outputs[k].size() == 0) {
+                        continue;
+                    }
+                    if (outputs[k] == null) {
+                        outputs[k] = CsvRecordEncoder.open(fileNames[k]);
+                    }
+                    outputs[k].append(split.outputs[k]);
+                    lines[k] += split.lines[k];
+                }
+            });
+        } finally {
+            for (CsvRecordEncoder output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+        System.out.println("Split " + (lines[RESIDU] + lines[INSERTS] + lines[DELETES]) + " records into " + lines[RESIDU] + " residu, " +
+                lines[INSERTS] + " inserts and " + lines[DELETES] + " deletes");
+    }
+
+    // Chunk i is [boundaries[i], boundaries[i + 1]); every boundary but the last directly follows a '\n'
+    private static long[] chunkBoundaries(FileChannel channel, long chunkBytes) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(1 << 16);
+        long position = chunkBytes;
+        while (position < size) {
+            long lineEnd = -1;
+            while (lineEnd < 0 && position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        lineEnd = position + i + 1;
+                        break;
+                    }
+                }
+                if (lineEnd < 0) {
+                    position += read;
+                }
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            boundaries.add(lineEnd);
+            position = lineEnd + chunkBytes;
+        }
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static SplitChunk splitChunk(FileChannel channel, long start, long end, long residuSize) throws IOException {
+        int length = (int) (end - start);
+        MappedByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        SplitChunk split = new SplitChunk();
+        for (int k = 0; k < 3; k++) {
+            split.outputs[k] = CsvRecordEncoder.inMemory(k == RESIDU ? length : length / 2);
+        }
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            int lastComma = -1;
+            while (lineEnd < length && input.get(lineEnd) != '\n') {
+                if (input.get(lineEnd) == ',') {
+                    lastComma = lineEnd;
+                }
+                lineEnd++;
+            }
+            // awk: id = $1 + 0, sign = $NF + 0; the header and empty lines have sign 0 and are dropped
+            double id = numericPrefix(input, lineStart, lineEnd);
+            double sign = lastComma < 0 ? id : numericPrefix(input, lastComma + 1, lineEnd);
+            int target = -1;
+            if (sign == 1 && id < residuSize) {
+                target = RESIDU;
+            } else if (sign == 1) {
+                target = INSERTS;
+            } else if (sign == -1) {
+                target = DELETES;
+            }
+            if (target >= 0) {
+                split.outputs[target].write(input, lineStart, lineEnd - lineStart);
+                split.outputs[target].writeByte('\n'); // awk also ends an unterminated last line
+                split.lines[target]++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return split;
+    }
+
+    /**
+     * Value of the longest numeric prefix of bytes [from, to) after leading blanks, 0 if there is
+     * none, which is how awk converts a field to a number.
+     */
+    static double numericPrefix(ByteBuffer bytes, int from, int to) {
+        int i = from;
+        while (i < to && (bytes.get(i) == ' ' || bytes.get(i) == '\t')) {
+            i++;
+        }
+        int numberStart = i;
+        boolean negative = false;
+        if (i < to && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (i < to && bytes.get(i) >= '0' && bytes.get(i) <= '9' && digits < 18) {
+            value = value * 10 + (bytes.get(i) - '0');
+            digits++;
+            i++;
+        }
+        boolean plainInteger = i == to || (bytes.get(i) != '.' && bytes.get(i) != 'e' && bytes.get(i) != 'E'
+                && (bytes.get(i) < '0' || bytes.get(i) > '9'));
+        if (plainInteger) {
+            return negative ? -value : value;
+        }
+        // Rare in generated data: fractions, exponents or very long numbers
+        int end = i;
+        while (end < to && "0123456789.eE+-".indexOf(bytes.get(end)) >= 0) {
+            end++;
+        }
+        for (; end > numberStart; end--) {
+            byte[] text = new byte[end - numberStart];
+            bytes.get(numberStart, text);
+            try {
+                return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                // Drop trailing characters until the prefix parses, e.g. "1e" or "1.2.3"
+            }
+        }
+        return 0;
+    }
+
+    private void splitBinary(String inputFile, long residuSize, String residuFile, String insertFile, String deleteFile) throws IOException {
+        try (BinaryRecordReader reader = new BinaryRecordReader(inputFile);
+             BinaryRecordWriter residu = BinaryRecordWriter.open(residuFile, reader.getColumns(), reader.getFieldWidth());
+             BinaryRecordWriter inserts = BinaryRecordWriter.open(insertFile, reader.getColumns(), reader.getFieldWidth());
+             BinaryRecordWriter deletes = BinaryRecordWriter.open(deleteFile, reader.getColumns(), reader.getFieldWidth())) {
+            int signField = reader.getNumFields() - 1;
+            long[] record = new long[reader.getNumFields()];
+            for (long row = 0; row < reader.getRecordCount(); row++) {
+                reader.readRecord(row, record);
+                long sign = record[signField];
+                if (sign == 1 && record[0] < residuSize) {
+                    residu.writeFields(record);
+                } else if (sign == 1) {
+                    inserts.writeFields(record);
+                } else if (sign == -1) {
+                    deletes.writeFields(record);
+                }
+            }
+            System.out.println("Split " + reader.getRecordCount() + " records into " + residu.getRecordCount() + " residu, " +
+                    inserts.getRecordCount() + " inserts and " + deletes.getRecordCount() + " deletes");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String jsonFilePath = args[0];
+        ObjectMapper mapper = new ObjectMapper();
+        Config config = mapper.readValue(new File(jsonFilePath), Config.class);
+
+        new SplitInsertsAndDeletes(config).run();
+    }
+}
@@ -0,0 +1,26 @@
+package org;
+
+/**
+ * SplitMix64 generator: one add and one mix per 64-bit draw. Also used as a stateless
+ * hash to derive independent seeds from (seed, index) pairs.
+ */
+public class SplitMix64 {
+    public static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SplitMix64(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,7 +1,5 @@
 package org;
 
-import org.apache.commons.math3.distribution.ZipfDistribution;
-
 import java.io.*;
 import java.util.*;
 
@@ -18,6 +16,79 @@ public class SyntheticDataset {
     private int[] pointQueriesNumAttrs;
     private int[] pointQueryBinNumber;
     private int[] pointQueriesNumZipfian;
+    private double zipfAlpha;
+    private PositionBitmapIndex bitmapIndex;
+    private FusedCapture fusedCapture;
+
+    /**
+     * Query seed records and answer counters collected while a dataset is generated (fusedQueries),
+     * so the queries of that dataset need no pass over the written files. With the stream generator
+     * the query records are captured (and, in bitmap mode, position bitmaps built); with the counter
+     * generator the queries are built before generation and their answers are counted directly.
+     * Queries are only generated for the dataset without noise, so only the residu is captured.
+     */
+    private static class FusedCapture {
+        final String datasetFileName;
+        final int[] selectedIds;        // Sorted, null when the queries are already built
+        final long[][] records;         // Attributes of the selected ids, by rank in selectedIds
+        final PositionBitmapIndex index; // null when not needed
+        final PointQueryIndex counts;   // null when the queries are not known yet
+
+        FusedCapture(String datasetFileName, int[] selectedIds, long[][] records,
+                     PositionBitmapIndex index, PointQueryIndex counts) {
+            this.datasetFileName = datasetFileName;
+            this.selectedIds = selectedIds;
+            this.records = records;
+            this.index = index;
+            this.counts = counts;
+        }
+
+        // Same captured records, separate counters for a chunk generated on another thread
+        FusedCapture newChunk(int numAttrs) {
+            return new FusedCapture(datasetFileName, selectedIds, records,
+                    index != null ? new PositionBitmapIndex(numAttrs) : null,
+                    counts != null ? counts.newCounter() : null);
+        }
+
+        void append(FusedCapture chunk) {
+            if (index != null) {
+                index.append(chunk.index);
+            }
+            if (counts != null) {
+                counts.addCounts(chunk.counts);
+            }
+        }
+
+        // Safe from chunk threads: every selected id is generated by exactly one chunk
+        void add(long[] record) {
+            if (selectedIds != null) {
+                int rank = Arrays.binarySearch(selectedIds, (int) record[0]);
+                if (rank >= 0) {
+                    records[rank] = Arrays.copyOfRange(record, 1, record.length);
+                }
+            }
+            count(record);
+        }
+
+        private void count(long[] record) {
+            if (index != null) {
+                index.add(record);
+            }
+            if (counts != null) {
+                counts.add(record);
+            }
+        }
+    }
+
+    private static class GeneratedChunk {
+        final RecordEncoder encoder;
+        final FusedCapture capture; // null unless fusedQueries
+
+        GeneratedChunk(RecordEncoder encoder, FusedCapture capture) {
+            this.encoder = encoder;
+            this.capture = capture;
+        }
+    }
 
     public SyntheticDataset(Config config) {
         this.config = config;
@@ -36,8 +107,30 @@ public class SyntheticDataset {
     public void synthDevDataGenerator(double perc, double sizeFactor,
                                   double zipfAlpha) {
         setupDataset(perc, sizeFactor, zipfAlpha);
-        generateSynthDataset(zipfAlpha);
-
+        generateSynthDataset(zipfAlpha, perc == 0 ? datasetFileName : null);
+        deleteBitmaps();
+    }
+
+    /**
+     * Generates the residu and the noise of the largest percentage once, into the shared folder,
+     * and writes a DatasetManifest per percentage that selects a prefix of the shared noise.
+     */
+    public void synthDevSweepGenerator(double[] percs, double sizeFactor,
+                                       double zipfAlpha) throws IOException {
+        double maxPerc = Arrays.stream(percs).max().orElse(0.0);
+        // The queries of perc 0 only read the residu, so they can be captured from the shared generation
+        setupDataset(0.0, sizeFactor, zipfAlpha);
+        String queryDatasetFileName = Arrays.stream(percs).anyMatch(perc -> perc == 0) ? datasetFileName : null;
+        setupDataset(maxPerc, sizeFactor, zipfAlpha);
+        generateSynthDataset(zipfAlpha, queryDatasetFileName);
+        for (double perc : percs) {
+            setupDataset(perc, sizeFactor, zipfAlpha);
+            String manifestFile = getSplitFileName("manifest").replaceAll("\\.(csv|bin)$", ".properties");
+            new DatasetManifest(getResiduFileName(), datasetSize, getNoiseInsertsFileName(), noiseSize, perc)
+                    .write(new File(manifestFile));
+            deleteBitmaps();
+            System.out.println("Wrote manifest for " + perc + ": " + manifestFile);
+        }
     }
 
     public void synthDevQueryGenerator(double perc, double sizeFactor,
@@ -58,6 +151,7 @@ public class SyntheticDataset {
         int numUniformAttrs = config.numUniformAttributes;
         datasetSize = (int) Math.pow(2, sizeFactor);
         noiseSize = (int) (datasetSize * perc);
+        this.zipfAlpha = zipfAlpha;
         datasetFileName = setDatasetName(numAttrs, domain, sizeFactor, datasetSize, numZipfianAttrs, zipfAlpha, numUniformAttrs, perc);
     }
 
@@ -65,7 +159,12 @@ public class SyntheticDataset {
                                   int numZipfianAttrs, double zipfAlpha, int numUniformAttrs,
                                   double perc) {
         return config.readFolder + "/input/synthFromDisk/zipfAlpha_" + zipfAlpha + "/" + sizeFactor + "/" + perc + "/" + "syntheticDataset_" + numAttrs + "_" + domain + "_" + sizeFactor + "_" + datasetSize + "_" +
-                numZipfianAttrs + "_" + zipfAlpha + "_" + numUniformAttrs + "_" + perc + ".csv";
+                numZipfianAttrs + "_" + zipfAlpha + "_" + numUniformAttrs + "_" + perc + RecordEncoder.extension(config.outputFormat);
+    }
+
+    // Ids of large noise sets do not fit the 4 byte fields of the binary format
+    private boolean wideFields() {
+        return (long) datasetSize + noiseSize > Integer.MAX_VALUE;
     }
 
 //    private String setQueryFileName(String datasetFileName) {
@@ -81,8 +180,8 @@ public class SyntheticDataset {
         File percFolder = datasetFile.getParentFile();  // e.g., .../5.0/0.3
         File sizeFactorFolder = percFolder.getParentFile();  // e.g., .../5.0
 
-        if (datasetFileName.endsWith(".csv")) {
-            String queryFileName = datasetFile.getName().replace(".csv", "_queries.csv");
+        if (datasetFileName.endsWith(".csv") || BinaryRecordReader.isBinary(datasetFileName)) {
+            String queryFileName = datasetFile.getName().replaceAll("\\.(csv|bin)$", "_queries.csv");
             // Find positions of the last two underscores
             int lastUnderscore = queryFileName.lastIndexOf("_");
             int secondLastUnderscore = queryFileName.lastIndexOf("_", lastUnderscore - 1);
@@ -101,30 +200,25 @@ public class SyntheticDataset {
             }
 
         } else {
-            throw new IllegalArgumentException("Dataset filename does not end with .csv");
+            throw new IllegalArgumentException("Dataset filename does not end with .csv or .bin");
         }
     }
 
 
-    private long[] createRecord (int index, ZipfDistribution zipf, Random unifRandom, int numAttrs, int numZipfianAttrs, int numUniformAttrs, int domain, double zipfAlpha) {
-        long[] record = new long[numAttrs + 1]; // +1 for id
+    // Fills record (length numAttrs + 1, id first) in place, so generation loops can reuse one array
+    private long[] createRecord (long[] record, long index, ZipfSampler zipf, Random unifRandom, int numAttrs, int numZipfianAttrs, int numUniformAttrs, int domain, double zipfAlpha) {
         record[0] = index; // id
         if (numZipfianAttrs > 0) {
-            long[] zipfData = ZipfGenerator.zipfDataRecord(zipf, numZipfianAttrs);
-            System.arraycopy(zipfData, 0, record, 1, numZipfianAttrs);
+            zipf.fill(record, 1, numZipfianAttrs);
         }
-        if (numUniformAttrs > 0) {
-            long[] unifData = new long[numUniformAttrs];
-            for (int j = 0; j < numUniformAttrs; j++) {
-                unifData[j] = unifRandom.nextInt(domain);
-            }
-            System.arraycopy(unifData, 0, record, 1 + numZipfianAttrs, numUniformAttrs);
+        for (int j = 0; j < numUniformAttrs; j++) {
+            record[1 + numZipfianAttrs + j] = unifRandom.nextInt(domain);
         }
-
         return record;
     }
 
-    private void generateSynthDataset(double zipfAlpha) {
+    // queryDatasetFileName: the dataset whose queries will be generated from this generation, or null
+    private void generateSynthDataset(double zipfAlpha, String queryDatasetFileName) {
         int numAttrs = 9;
         int domain = config.domain;
         int numZipfianAttrs = config.numZipfAttributes;
@@ -133,25 +227,13 @@ public class SyntheticDataset {
             throw new IllegalArgumentException("Number of attributes must be sum of Zipfian and Uniform attributes (" +
                     numZipfianAttrs + " + " + numUniformAttrs + ") but got " + numAttrs);
         }
-        try (BufferedWriter writer = getBufferedWriter(datasetFileName)) {
-            writeHeader(writer, numAttrs);
-            ZipfDistribution zipfResidu = ZipfGenerator.getZipfDistribution(domain, zipfAlpha, 0);
-            double zipfNoiseAlpha = zipfAlpha - 0.2; // Slightly lower alpha for noise
-            ZipfDistribution zipfNoise = ZipfGenerator.getZipfDistribution(domain, zipfNoiseAlpha, 1);
-
-            Random unifRandom = new Random(0);
-
-            for (int i = 0; i < datasetSize; i++) {
-                // Create a record
-                long[] record = createRecord(i, zipfResidu, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfAlpha);
-                writeRecord(writer, record, 1);
-            }
-            for (int i = 0; i < noiseSize; i++) {
-                // Create a noise record
-                long[] record = createRecord(i + datasetSize, zipfNoise, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfNoiseAlpha);
-                writeRecord(writer, record, 1);
-                writeRecord(writer, record, -1);
-            }
+        fusedCapture = config.fusedQueries && queryDatasetFileName != null ? newFusedCapture(numAttrs, queryDatasetFileName) : null;
+        if (config.splitOutput || config.sweepPerc) {
+            generateSplitDataset(zipfAlpha, numAttrs, domain, numZipfianAttrs, numUniformAttrs);
+            return;
+        }
+        try (RecordEncoder encoder = RecordEncoder.open(config.outputFormat, datasetFileName, header(numAttrs), wideFields())) {
+            writeRecords(encoder, encoder, true, zipfAlpha, numAttrs, domain, numZipfianAttrs, numUniformAttrs);
         } catch (IOException except)
         {
             System.err.println("Error opening file for writing: " + datasetFileName);
@@ -159,20 +241,239 @@ public class SyntheticDataset {
         }
     }
 
+    /**
+     * Writes residu and noise inserts straight to the split_sets files that
+     * splitInsertsAndDeletesODC.sh would produce from the combined file (CSV without header).
+     * The noise_deletes file is not written: it only repeats the inserts and no mixer reads it.
+     * In a sweep the files go to the shared folder instead, with a header so readers can take a prefix.
+     */
+    private void generateSplitDataset(double zipfAlpha, int numAttrs, int domain,
+                                      int numZipfianAttrs, int numUniformAttrs) {
+        String residuFile = getResiduFileName();
+        String noiseFile = getNoiseInsertsFileName();
+        boolean csvHeader = config.sweepPerc;
+        try (RecordEncoder residuEncoder = RecordEncoder.open(config.outputFormat, residuFile, header(numAttrs), wideFields(), csvHeader);
+             RecordEncoder noiseEncoder = noiseSize > 0
+                     ? RecordEncoder.open(config.outputFormat, noiseFile, header(numAttrs), wideFields(), csvHeader)
+                     : null) {
+            writeRecords(residuEncoder, noiseEncoder, false, zipfAlpha, numAttrs, domain, numZipfianAttrs, numUniformAttrs);
+        } catch (IOException except) {
+            System.err.println("Error opening file for writing: " + residuFile);
+            except.printStackTrace();
+        }
+    }
+
+    public String getResiduFileName() {
+        return config.sweepPerc ? getSharedFileName("shared_residu") : getSplitFileName("residu");
+    }
+
+    public String getNoiseInsertsFileName() {
+        return config.sweepPerc ? getSharedFileName("shared_noise_inserts") : getSplitFileName("noise_inserts");
+    }
+
+    // {sizeFactor}/shared/{kind}_{sizeFactor}_{numZipf}_{alpha}_{numUniform}, independent of the percentage
+    private String getSharedFileName(String kind) {
+        File datasetFile = new File(datasetFileName);
+        String[] parts = datasetFile.getName().split("_");
+        String suffix = "_" + parts[3] + "_" + parts[5] + "_" + parts[6] + "_" + parts[7] + RecordEncoder.extension(config.outputFormat);
+        File sizeFactorFolder = datasetFile.getParentFile().getParentFile();
+        return new File(new File(sizeFactorFolder, "shared"), kind + suffix).getPath();
+    }
+
+    // Same naming as splitInsertsAndDeletesODC.sh: {kind}_{sizeFactor}_{numZipf}_{alpha}_{numUniform}_{perc}
+    private String getSplitFileName(String kind) {
+        File datasetFile = new File(datasetFileName);
+        String[] parts = datasetFile.getName().split("_");
+        String suffix = "_" + parts[3] + "_" + parts[5] + "_" + parts[6] + "_" + parts[7] + "_" + parts[8];
+        return new File(new File(datasetFile.getParentFile(), "split_sets"), kind + suffix).getPath();
+    }
+
+    /**
+     * Generates the residu into residuOut and the noise into noiseOut, either sequentially
+     * or in seeded chunks. With withDeletes every noise record is also written with sign -1.
+     */
+    private void writeRecords(RecordEncoder residuOut, RecordEncoder noiseOut, boolean withDeletes, double zipfAlpha,
+                              int numAttrs, int domain, int numZipfianAttrs, int numUniformAttrs) throws IOException {
+        double zipfNoiseAlpha = noiseAlpha(zipfAlpha);
+        CounterRecordGenerator counter = counterGenerator();
+        if (config.parallelGeneration) {
+            ChunkedDatasetGenerator generator = new ChunkedDatasetGenerator(config.numThreads, config.chunkSize);
+            // Residu and noise use different base seeds, like the sequential generator uses seed 0 and 1
+            FusedCapture capture = fusedCapture;
+            generator.generate(datasetSize, config.seed, (chunk, start, end, seed) -> {
+                ZipfSampler zipf = counter == null ? ZipfGenerator.getZipfSampler(config.zipfSampler, domain, zipfAlpha, seed, false) : null;
+                Random unifRandom = new Random(seed);
+                RecordEncoder chunkEncoder = residuOut.newChunk((int) (end - start));
+                FusedCapture chunkCapture = capture != null ? capture.newChunk(numAttrs) : null;
+                long[] record = new long[numAttrs + 1];
+                for (long i = start; i < end; i++) {
+                    if (counter != null) {
+                        counter.fill(record, i);
+                    } else {
+                        createRecord(record, i, zipf, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfAlpha);
+                    }
+                    chunkEncoder.writeRecord(record, 1);
+                    if (chunkCapture != null) {
+                        chunkCapture.add(record);
+                    }
+                }
+                return new GeneratedChunk(chunkEncoder, chunkCapture);
+            }, generated -> appendChunk(residuOut, generated));
+            if (noiseSize == 0) {
+                return;
+            }
+            generator.generate(noiseSize, config.seed + 1, (chunk, start, end, seed) -> {
+                ZipfSampler zipf = counter == null ? ZipfGenerator.getZipfSampler(config.zipfSampler, domain, zipfNoiseAlpha, seed, false) : null;
+                Random unifRandom = new Random(seed);
+                RecordEncoder chunkEncoder = noiseOut.newChunk((withDeletes ? 2 : 1) * (int) (end - start));
+                long[] record = new long[numAttrs + 1];
+                for (long i = start; i < end; i++) {
+                    if (counter != null) {
+                        counter.fill(record, i + datasetSize);
+                    } else {
+                        createRecord(record, i + datasetSize, zipf, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfNoiseAlpha);
+                    }
+                    chunkEncoder.writeRecord(record, 1);
+                    if (withDeletes) {
+                        chunkEncoder.writeRecord(record, -1);
+                    }
+                }
+                return new GeneratedChunk(chunkEncoder, null);
+            }, generated -> appendChunk(noiseOut, generated));
+            return;
+        }
+
+        ZipfSampler zipfResidu = ZipfGenerator.getZipfSampler(config.zipfSampler, domain, zipfAlpha, 0, true);
+        ZipfSampler zipfNoise = ZipfGenerator.getZipfSampler(config.zipfSampler, domain, zipfNoiseAlpha, 1, true);
+
+        Random unifRandom = new Random(0);
+        long[] record = new long[numAttrs + 1]; // +1 for id
+
+        for (int i = 0; i < datasetSize; i++) {
+            // Create a record
+            if (counter != null) {
+                counter.fill(record, i);
+            } else {
+                createRecord(record, i, zipfResidu, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfAlpha);
+            }
+            residuOut.writeRecord(record, 1);
+            if (fusedCapture != null) {
+                fusedCapture.add(record);
+            }
+        }
+        for (int i = 0; i < noiseSize; i++) {
+            // Create a noise record
+            if (counter != null) {
+                counter.fill(record, i + datasetSize);
+            } else {
+                createRecord(record, i + datasetSize, zipfNoise, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfNoiseAlpha);
+            }
+            noiseOut.writeRecord(record, 1);
+            if (withDeletes) {
+                noiseOut.writeRecord(record, -1);
+            }
+        }
+    }
+
+    private void appendChunk(RecordEncoder out, GeneratedChunk chunk) throws IOException {
+        out.append(chunk.encoder);
+        if (chunk.capture != null) {
+            fusedCapture.append(chunk.capture);
+        }
+    }
+
+    private static double noiseAlpha(double zipfAlpha) {
+        return zipfAlpha - 0.2; // Slightly lower alpha for noise
+    }
+
+    // null for the default "stream" generator
+    private CounterRecordGenerator counterGenerator() {
+        if (!"counter".equals(config.recordGenerator)) {
+            return null;
+        }
+        return new CounterRecordGenerator(config.seed, datasetSize, config.numZipfAttributes, config.numUniformAttributes,
+                config.domain, zipfAlpha, noiseAlpha(zipfAlpha));
+    }
+
+    // Attributes of the selected records, in id order, computed without reading the dataset
+    private long[][] counterRecords(Set<Integer> selectedIndices, int numAttrs) {
+        CounterRecordGenerator counter = counterGenerator();
+        int[] ids = sortedIds(selectedIndices);
+        long[][] records = new long[ids.length][];
+        long[] record = new long[numAttrs + 1];
+        for (int i = 0; i < ids.length; i++) {
+            records[i] = Arrays.copyOfRange(counter.fill(record, ids[i]), 1, numAttrs + 1);
+        }
+        return records;
+    }
+
+    private FusedCapture newFusedCapture(int numAttrs, String queryDatasetFileName) {
+        Set<Integer> selectedIndices = selectRandomIndices(datasetSize, config.numQueries);
+        boolean bitmaps = "bitmap".equals(config.exactAnswerMode);
+        if (counterGenerator() != null) {
+            // The query records are known up front, so the queries can be counted while generating
+            populatePointQueries(counterRecords(selectedIndices, numAttrs));
+            prepareQueries(numAttrs);
+            return new FusedCapture(queryDatasetFileName, null, null,
+                    bitmaps ? new PositionBitmapIndex(numAttrs) : null, new PointQueryIndex(pointQueries, numAttrs));
+        }
+        int[] ids = sortedIds(selectedIndices);
+        return new FusedCapture(queryDatasetFileName, ids, new long[ids.length][],
+                bitmaps ? new PositionBitmapIndex(numAttrs) : null, null);
+    }
 
 
     private void generateSynthQueries() throws IOException {
         int numAttrs = 9;
         int numZipfianAttrs = config.numZipfAttributes;
 
+        if (fusedCapture != null && fusedCapture.datasetFileName.equals(datasetFileName)) {
+            FusedCapture capture = fusedCapture;
+            fusedCapture = null;
+            if (capture.index != null) {
+                capture.index.write(new File(getBitmapFileName()));
+            }
+            if (capture.counts != null) {
+                System.out.println("Using the query answers counted during generation");
+                System.arraycopy(capture.counts.getAnswers(), 0, pointQueryAnswers, 0, pointQueries.length);
+                System.arraycopy(capture.counts.getUnion(), 0, pointQueryUnion, 0, pointQueries.length);
+                writeQueriesToFile();
+                computeQueryStats(numAttrs, numZipfianAttrs);
+                return;
+            }
+            System.out.println(capture.index != null ? "Using the query records and bitmaps captured during generation"
+                    : "Using the query records captured during generation");
+            bitmapIndex = capture.index;
+            populatePointQueries(capture.records);
+            finishQueries(numAttrs, numZipfianAttrs);
+            return;
+        }
         Set<Integer> selectedIndices = selectRandomIndices(datasetSize, config.numQueries);
-        try (BufferedReader reader = new BufferedReader(new FileReader(datasetFileName))) {
-            populatePointQueries(reader, numAttrs, selectedIndices);
+        try {
+            if ("bitmap".equals(config.exactAnswerMode)) {
+                bitmapIndex = loadOrBuildBitmaps(numAttrs);
+            }
+            if (counterGenerator() != null) {
+                populatePointQueries(counterRecords(selectedIndices, numAttrs));
+            } else if (bitmapIndex != null) {
+                populatePointQueriesFromBitmaps(numAttrs, selectedIndices);
+            } else {
+                populatePointQueries(numAttrs, selectedIndices);
+            }
         } catch (IOException e) {
             System.err.println("Error opening file for queries: " + datasetFileName);
             throw e;
         }
+        finishQueries(numAttrs, numZipfianAttrs);
+    }
+
+    private void finishQueries(int numAttrs, int numZipfianAttrs) {
+        prepareQueries(numAttrs);
+        computeExactAnswers();
+        computeQueryStats(numAttrs, numZipfianAttrs);
+    }
 
+    private void prepareQueries(int numAttrs) {
         pointQueryAnswers = new int[pointQueries.length];
         pointQueryUnion = new int[pointQueries.length];
         pointQueriesNumAttrs = new int[pointQueries.length];
@@ -180,8 +481,6 @@ public class SyntheticDataset {
         pointQueriesNumZipfian = new int[pointQueries.length];
         applyPredicates(numAttrs);
         deduplicateQueries(numAttrs);
-        computeExactAnswers();
-        computeQueryStats(numAttrs, numZipfianAttrs);
     }
 
 
@@ -228,46 +527,30 @@ public class SyntheticDataset {
     }
 
     private void computeExactAnswers() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(datasetFileName))) {
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("id")) continue;
-
-                long[] record = readRecord(line, pointQueries[0].length);
-                updateAnswers(record);
+        if (bitmapIndex != null) {
+            for (int i = 0; i < pointQueries.length; i++) {
+                pointQueryAnswers[i] = bitmapIndex.answer(pointQueries[i]);
+                pointQueryUnion[i] = bitmapIndex.union(pointQueries[i]);
             }
+            writeQueriesToFile();
+            return;
+        }
+        PointQueryIndex index = new PointQueryIndex(pointQueries, pointQueries[0].length);
+        try {
+            forEachRecord(pointQueries[0].length, record -> {
+                index.add(record);
+                return true;
+            });
         } catch (IOException e) {
             System.err.println("Error computing exact answers.");
             e.printStackTrace();
         }
+        System.arraycopy(index.getAnswers(), 0, pointQueryAnswers, 0, pointQueries.length);
+        System.arraycopy(index.getUnion(), 0, pointQueryUnion, 0, pointQueries.length);
 
         writeQueriesToFile();
     }
 
-    private void updateAnswers(long[] record) {
-        for (int i = 0; i < pointQueries.length; i++) {
-            boolean match = true;
-            boolean unionMatch = false;
-
-            for (int j = 0; j < pointQueries[i].length; j++) {
-                long queryVal = pointQueries[i][j];
-                long recordVal = record[j + 1];
-
-                if (queryVal != -1 && queryVal != recordVal) {
-                    match = false;
-                    break;
-                }
-                if (queryVal != -1 && queryVal == recordVal) {
-                    unionMatch = true;
-                }
-            }
-
-            if (match) pointQueryAnswers[i]++;
-            if (unionMatch) pointQueryUnion[i]++;
-        }
-    }
-
     private void writeQueriesToFile() {
         queryFileName = setQueryFileName(datasetFileName, 0.0);
 
@@ -321,25 +604,131 @@ public class SyntheticDataset {
         }
     }
 
-    private void populatePointQueries(BufferedReader reader, int numAttrs, Set<Integer> selectedIndices) throws IOException {
-        String line;
-        int added = 0;
-        while ((line = reader.readLine()) != null && added < pointQueries.length) {
-            if (line.startsWith("id")) continue;
-            long[] record = readRecord(line, numAttrs);
+    private void populatePointQueries(int numAttrs, Set<Integer> selectedIndices) throws IOException {
+        int[] added = {0};
+        forEachRecord(numAttrs, record -> {
             int id = (int) record[0];
             if (selectedIndices.contains(id)) {
                 for (int p = 0; p < config.numPredicates; p++) {
-                    pointQueries[added] = new long[numAttrs];
-                    System.arraycopy(record, 1, pointQueries[added], 0, numAttrs);
-                    added++;
+                    pointQueries[added[0]] = new long[numAttrs];
+                    System.arraycopy(record, 1, pointQueries[added[0]], 0, numAttrs);
+                    added[0]++;
                 }
             }
-        }
+            return added[0] < pointQueries.length;
+        });
 
         // shrink the pointQueries array to the actual number of queries added
+        pointQueries = Arrays.copyOf(pointQueries, added[0]);
+
+    }
+
+    // Residu record i is at position i, both in the combined file and in the split residu
+    private void populatePointQueriesFromBitmaps(int numAttrs, Set<Integer> selectedIndices) {
+        int[] ids = sortedIds(selectedIndices);
+        long[][] records = new long[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            records[i] = new long[numAttrs];
+            bitmapIndex.readRecord(ids[i], records[i]);
+        }
+        populatePointQueries(records);
+    }
+
+    // Records (attributes only) of the selected ids in id order, the order populatePointQueries reads them in
+    private void populatePointQueries(long[][] records) {
+        pointQueries = new long[records.length * config.numPredicates][];
+        int added = 0;
+        for (long[] record : records) {
+            for (int p = 0; p < config.numPredicates && added < pointQueries.length; p++) {
+                pointQueries[added++] = record.clone();
+            }
+        }
         pointQueries = Arrays.copyOf(pointQueries, added);
+    }
+
+    private static int[] sortedIds(Set<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Loads the position bitmaps of the dataset, or builds them with one scan and saves them.
+     */
+    private PositionBitmapIndex loadOrBuildBitmaps(int numAttrs) throws IOException {
+        File bitmapFile = new File(getBitmapFileName());
+        long expectedRecords = datasetSize + 2L * noiseSize; // The noise is read as insert and delete
+        if (bitmapFile.exists()) {
+            PositionBitmapIndex index = PositionBitmapIndex.read(bitmapFile);
+            if (index.getNumRecords() == expectedRecords && index.getNumAttrs() == numAttrs) {
+                System.out.println("Loaded position bitmaps: " + bitmapFile);
+                return index;
+            }
+            System.out.println("Position bitmaps do not match the dataset, rebuilding: " + bitmapFile);
+        }
+        PositionBitmapIndex index = new PositionBitmapIndex(numAttrs);
+        forEachRecord(numAttrs, record -> {
+            index.add(record);
+            return true;
+        });
+        index.write(bitmapFile);
+        System.out.println("Wrote position bitmaps: " + bitmapFile);
+        return index;
+    }
+
+    // Next to the query file; the "queries" in the name keeps the split scripts from treating it as a dataset
+    private String getBitmapFileName() {
+        return datasetFileName.replaceAll("\\.(csv|bin)$", "_queries.bitmaps");
+    }
+
+    // Bitmaps of a previous generation describe other records
+    private void deleteBitmaps() {
+        File bitmapFile = new File(getBitmapFileName());
+        if (bitmapFile.exists() && !bitmapFile.delete()) {
+            System.err.println("Could not delete stale position bitmaps: " + bitmapFile);
+        }
+    }
+
+    private interface RecordConsumer {
+        // Records may be reused between calls; return false to stop reading
+        boolean accept(long[] record);
+    }
 
+    // Streams (id, attrs..., sign) records of the dataset, in CSV or binary format
+    private void forEachRecord(int numAttrs, RecordConsumer consumer) throws IOException {
+        if (!config.splitOutput && !config.sweepPerc) {
+            forEachRecord(datasetFileName, Long.MAX_VALUE, numAttrs, consumer);
+            return;
+        }
+        // The noise inserts are read twice: the combined file holds every noise record as insert and delete.
+        // Shared sweep noise is read up to this percentage's noise size.
+        if (!forEachRecord(getResiduFileName(), datasetSize, numAttrs, consumer)) return;
+        for (int pass = 0; pass < 2 && noiseSize > 0; pass++) {
+            if (!forEachRecord(getNoiseInsertsFileName(), noiseSize, numAttrs, consumer)) return;
+        }
+    }
+
+    // Returns false if the consumer stopped the scan
+    private boolean forEachRecord(String fileName, long maxRecords, int numAttrs, RecordConsumer consumer) throws IOException {
+        if (BinaryRecordReader.isBinary(fileName)) {
+            try (BinaryRecordReader reader = new BinaryRecordReader(fileName)) {
+                long[] record = new long[numAttrs + 2];
+                long numRecords = Math.min(maxRecords, reader.getRecordCount());
+                for (long row = 0; row < numRecords; row++) {
+                    reader.readRecord(row, record);
+                    if (!consumer.accept(record)) return false;
+                }
+            }
+            return true;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            long read = 0;
+            while (read < maxRecords && (line = reader.readLine()) != null) {
+                if (line.startsWith("id")) continue;
+                read++;
+                if (!consumer.accept(readRecord(line, numAttrs))) return false;
+            }
+        }
+        return true;
     }
 
     private void loadQueries(double perc) {
@@ -405,33 +794,14 @@ public class SyntheticDataset {
         }
     }
 
-    private void writeRecord(BufferedWriter writer, long[] record, int sign) {
-        String[] recordStr = Arrays.stream(record)
-                .mapToObj(String::valueOf)
-                .toArray(String[]::new);
-        recordStr = Arrays.copyOf(recordStr, recordStr.length + 1);
-        recordStr[recordStr.length - 1] = String.valueOf(sign); // Append sign at the end
-        try {
-            writeLine(writer, recordStr);
-        } catch (IOException e) {
-            System.err.println("Error writing record to file: " + datasetFileName);
-            e.printStackTrace();
-        }
-    }
-
-    private void writeHeader(BufferedWriter writer, int numAttrs) {
+    private String[] header(int numAttrs) {
         String[] header = new String[numAttrs + 2];
         header[0] = "id";
         for (int i = 1; i <= numAttrs; i++) {
             header[i] = "attr" + i;
         }
         header[header.length - 1] = "sign"; // Append sign at the end
-        try {
-            writeLine(writer, header);
-        } catch (IOException e) {
-            System.err.println("Error writing header to file: " + datasetFileName);
-            e.printStackTrace();
-        }
+        return header;
     }
 
     private long[] readRecord(String line, int numAttrs) {
@@ -446,16 +816,6 @@ public class SyntheticDataset {
         return record;
     }
 
-    private BufferedWriter getBufferedWriter(String filename) throws IOException {
-        // check if dir exists, if not create it
-        File file = new File(filename);
-        File parentDir = file.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
-        }
-        return new BufferedWriter(new FileWriter(filename));
-    }
-
     private BufferedReader getBufferedReader(String filename) throws IOException {
         return new BufferedReader(new FileReader(filename));
     }
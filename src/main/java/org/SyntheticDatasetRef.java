@@ -1,7 +1,5 @@
 package org;
 
-import org.apache.commons.math3.distribution.ZipfDistribution;
-
 import java.io.*;
 import java.util.*;
 
@@ -30,24 +28,18 @@ public class SyntheticDatasetRef {
 
     private String setDatasetName(int numAttrs, int domain, double sizeFactor, int datasetSize,
                                   int numZipfianAttrs, double zipfAlpha, int numUniformAttrsc) {
-        return config.readFolder + "/input/data/synthFromDisk/" + numAttrs + "/zipfAlpha_" + zipfAlpha + "/" + sizeFactor + "/cleanFile.csv";
+        return config.readFolder + "/input/data/synthFromDisk/" + numAttrs + "/zipfAlpha_" + zipfAlpha + "/" + sizeFactor + "/cleanFile" + RecordEncoder.extension(config.outputFormat);
     }
 
-    private long[] createRecord (int index, ZipfDistribution zipf, Random unifRandom, int numAttrs, int numZipfianAttrs, int numUniformAttrs, int domain, double zipfAlpha) {
-        long[] record = new long[numAttrs + 1]; // +1 for id
+    // Fills record (length numAttrs + 1, id first) in place, so generation loops can reuse one array
+    private long[] createRecord (long[] record, long index, ZipfSampler zipf, Random unifRandom, int numAttrs, int numZipfianAttrs, int numUniformAttrs, int domain, double zipfAlpha) {
         record[0] = index; // id
         if (numZipfianAttrs > 0) {
-            long[] zipfData = ZipfGenerator.zipfDataRecord(zipf, numZipfianAttrs);
-            System.arraycopy(zipfData, 0, record, 1, numZipfianAttrs);
+            zipf.fill(record, 1, numZipfianAttrs);
         }
-        if (numUniformAttrs > 0) {
-            long[] unifData = new long[numUniformAttrs];
-            for (int j = 0; j < numUniformAttrs; j++) {
-                unifData[j] = unifRandom.nextInt(domain);
-            }
-            System.arraycopy(unifData, 0, record, 1 + numZipfianAttrs, numUniformAttrs);
+        for (int j = 0; j < numUniformAttrs; j++) {
+            record[1 + numZipfianAttrs + j] = unifRandom.nextInt(domain);
         }
-
         return record;
     }
 
@@ -60,15 +52,19 @@ public class SyntheticDatasetRef {
             throw new IllegalArgumentException("Number of attributes must be sum of Zipfian and Uniform attributes (" +
                     numZipfianAttrs + " + " + numUniformAttrs + ") but got " + numAttrs);
         }
-        try (BufferedWriter writer = getBufferedWriter(datasetFileName)) {
-            writeHeader(writer, numAttrs);
-            ZipfDistribution zipfResidu = ZipfGenerator.getZipfDistribution(domain, zipfAlpha, 0);
+        if (config.parallelGeneration) {
+            generateSynthDatasetChunked(zipfAlpha, numAttrs, domain, numZipfianAttrs, numUniformAttrs);
+            return;
+        }
+        try (RecordEncoder encoder = RecordEncoder.open(config.outputFormat, datasetFileName, header(numAttrs), false)) {
+            ZipfSampler zipfResidu = ZipfGenerator.getZipfSampler(config.zipfSampler, domain, zipfAlpha, 0, true);
             Random unifRandom = new Random(0);
+            long[] record = new long[numAttrs + 1]; // +1 for id
 
             for (int i = 0; i < datasetSize; i++) {
                 // Create a record
-                long[] record = createRecord(i, zipfResidu, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfAlpha);
-                writeRecord(writer, record, 1);
+                createRecord(record, i, zipfResidu, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfAlpha);
+                encoder.writeRecord(record, 1);
             }
 
         } catch (IOException except)
@@ -78,48 +74,35 @@ public class SyntheticDatasetRef {
         }
     }
 
-    private void writeRecord(BufferedWriter writer, long[] record, int sign) {
-        String[] recordStr = Arrays.stream(record)
-                .mapToObj(String::valueOf)
-                .toArray(String[]::new);
-        recordStr = Arrays.copyOf(recordStr, recordStr.length + 1);
-        recordStr[recordStr.length - 1] = String.valueOf(sign); // Append sign at the end
-        try {
-            writeLine(writer, recordStr);
-        } catch (IOException e) {
-            System.err.println("Error writing record to file: " + datasetFileName);
-            e.printStackTrace();
+    private void generateSynthDatasetChunked(double zipfAlpha, int numAttrs, int domain,
+                                             int numZipfianAttrs, int numUniformAttrs) {
+        ChunkedDatasetGenerator generator = new ChunkedDatasetGenerator(config.numThreads, config.chunkSize);
+        try (RecordEncoder encoder = RecordEncoder.open(config.outputFormat, datasetFileName, header(numAttrs), false)) {
+            generator.generate(datasetSize, config.seed, (chunk, start, end, seed) -> {
+                ZipfSampler zipf = ZipfGenerator.getZipfSampler(config.zipfSampler, domain, zipfAlpha, seed, false);
+                Random unifRandom = new Random(seed);
+                RecordEncoder chunkEncoder = encoder.newChunk((int) (end - start));
+                long[] record = new long[numAttrs + 1];
+                for (long i = start; i < end; i++) {
+                    createRecord(record, i, zipf, unifRandom, numAttrs, numZipfianAttrs, numUniformAttrs, domain, zipfAlpha);
+                    chunkEncoder.writeRecord(record, 1);
+                }
+                return chunkEncoder;
+            }, encoder::append);
+        } catch (IOException except) {
+            System.err.println("Error opening file for writing: " + datasetFileName);
+            except.printStackTrace();
         }
     }
 
-    private void writeHeader(BufferedWriter writer, int numAttrs) {
+    private String[] header(int numAttrs) {
         String[] header = new String[numAttrs + 2];
         header[0] = "id";
         for (int i = 1; i <= numAttrs; i++) {
             header[i] = "attr" + i;
         }
         header[header.length - 1] = "sign"; // Append sign at the end
-        try {
-            writeLine(writer, header);
-        } catch (IOException e) {
-            System.err.println("Error writing header to file: " + datasetFileName);
-            e.printStackTrace();
-        }
-    }
-
-    private BufferedWriter getBufferedWriter(String filename) throws IOException {
-        // check if dir exists, if not create it
-        File file = new File(filename);
-        File parentDir = file.getParentFile();
-        if (parentDir != null && !parentDir.exists()) {
-            parentDir.mkdirs();
-        }
-        return new BufferedWriter(new FileWriter(filename));
-    }
-
-    private void writeLine(BufferedWriter writer, String... values) throws IOException {
-        writer.write(String.join(",", values));
-        writer.newLine();
+        return header;
     }
 
 }
@@ -19,10 +19,58 @@ public class ZipfGenerator {
     }
 
     public static ZipfDistribution getZipfDistribution(int maxValue, double alpha, int seed) {
-        Well19937c random = new Well19937c(seed);
+        return getZipfDistribution(maxValue, alpha, seed, true);
+    }
+
+    /**
+     * Well19937c(int) and Well19937c(long) seed different streams from the same value, so the seeding is
+     * explicit: intSeed uses Well19937c((int) seed), as the sequential generator always has with seeds
+     * 0 and 1, and keeps its datasets byte-identical; the chunked generator's long seeds pass false.
+     */
+    public static ZipfDistribution getZipfDistribution(int maxValue, double alpha, long seed, boolean intSeed) {
+        if (intSeed && seed != (int) seed) {
+            throw new IllegalArgumentException("Seed " + seed + " does not fit the int seeding");
+        }
+        Well19937c random = intSeed ? new Well19937c((int) seed) : new Well19937c(seed);
         return new ZipfDistribution(random, maxValue, alpha);
     }
 
+    /**
+     * Returns the sampler selected by name: "commons" draws from commons-math ZipfDistribution
+     * exactly like zipfDataRecord, seeded as getZipfDistribution; "alias" uses the constant-time
+     * AliasZipfSampler, which has a single long seeding.
+     */
+    public static ZipfSampler getZipfSampler(String type, int maxValue, double alpha, long seed, boolean intSeed) {
+        if (USE_ALIAS.equals(type)) {
+            return new AliasZipfSampler(maxValue, alpha, seed);
+        }
+        return new CommonsZipfSampler(getZipfDistribution(maxValue, alpha, seed, intSeed));
+    }
+
+    private static final String USE_ALIAS = "alias";
+
+    static class CommonsZipfSampler implements ZipfSampler {
+        private final ZipfDistribution zipf;
+
+        CommonsZipfSampler(ZipfDistribution zipf) {
+            this.zipf = zipf;
+        }
+
+        @Override
+        public void fill(long[] out, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                out[i] = zipf.sample();
+            }
+        }
+
+        @Override
+        public void fill(int[] out, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                out[i] = zipf.sample();
+            }
+        }
+    }
+
     public static long[] zipfDataRecord(ZipfDistribution zipf, int numberOfAttributes) {
         long[] record = new long[numberOfAttributes];
         for (int i=0;i<numberOfAttributes;i++) {
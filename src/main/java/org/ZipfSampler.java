@@ -0,0 +1,11 @@
+package org;
+
+/**
+ * Source of Zipf distributed values in [1, domain]. Samplers fill caller-supplied arrays so
+ * the hot generation loops do not allocate per record.
+ */
+public interface ZipfSampler {
+    void fill(long[] out, int offset, int length);
+
+    void fill(int[] out, int offset, int length);
+}
@@ -0,0 +1,128 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryRecordFormatTest {
+    private static final String[] COLUMNS = {"id", "a", "b", "sign"};
+
+    @TempDir
+    File tmp;
+
+    private static long[][] records(int count, long seed, boolean wide) {
+        Random random = new Random(seed);
+        long[][] records = new long[count][];
+        for (int i = 0; i < count; i++) {
+            long b = wide ? random.nextLong() : random.nextInt();
+            records[i] = new long[]{i, random.nextInt(10000), b};
+        }
+        return records;
+    }
+
+    private static void assertRecords(String fileName, long[][] records, int fieldWidth) throws IOException {
+        try (BinaryRecordReader reader = new BinaryRecordReader(fileName)) {
+            assertArrayEquals(COLUMNS, reader.getColumns());
+            assertEquals(COLUMNS.length, reader.getNumFields());
+            assertEquals(fieldWidth, reader.getFieldWidth());
+            assertEquals(records.length, reader.getRecordCount());
+            long[] record = new long[COLUMNS.length];
+            for (int row = 0; row < records.length; row++) {
+                reader.readRecord(row, record);
+                for (int field = 0; field < records[row].length; field++) {
+                    assertEquals(records[row][field], record[field]);
+                    assertEquals(records[row][field], reader.getLong(row, field));
+                }
+                assertEquals(row % 3 == 0 ? -1 : 1, record[COLUMNS.length - 1]);
+            }
+        }
+    }
+
+    @Test
+    void roundTripsIntFields() throws IOException {
+        String fileName = new File(tmp, "ints.bin").getPath();
+        long[][] records = records(1000, 1, false);
+        records[1] = new long[]{1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        try (RecordEncoder writer = RecordEncoder.open(RecordEncoder.FORMAT_BINARY, fileName, COLUMNS, false)) {
+            for (int row = 0; row < records.length; row++) {
+                writer.writeRecord(records[row], row % 3 == 0 ? -1 : 1);
+            }
+        }
+        assertRecords(fileName, records, Integer.BYTES);
+    }
+
+    @Test
+    void roundTripsLongFields() throws IOException {
+        String fileName = new File(tmp, "longs.bin").getPath();
+        long[][] records = records(1000, 2, true);
+        records[1] = new long[]{1, Long.MIN_VALUE, Long.MAX_VALUE};
+        try (RecordEncoder writer = RecordEncoder.open(RecordEncoder.FORMAT_BINARY, fileName, COLUMNS, true)) {
+            for (int row = 0; row < records.length; row++) {
+                writer.writeRecord(records[row], row % 3 == 0 ? -1 : 1);
+            }
+        }
+        assertRecords(fileName, records, Long.BYTES);
+    }
+
+    @Test
+    void readsIntRangesIntoIntArrays() throws IOException {
+        String fileName = new File(tmp, "ranges.bin").getPath();
+        try (BinaryRecordWriter writer = BinaryRecordWriter.open(fileName, COLUMNS, Long.BYTES)) {
+            writer.writeRecord(new int[]{9, 7, -3, 5, 99}, 1, 4, -1);
+        }
+        try (BinaryRecordReader reader = new BinaryRecordReader(fileName)) {
+            int[] out = new int[6];
+            reader.readRecord(0, out, 1, 4);
+            assertArrayEquals(new int[]{0, 7, -3, 5, -1, 0}, out);
+            assertEquals(-3, reader.getInt(0, 1));
+        }
+    }
+
+    @Test
+    void appendedChunksEqualDirectWrites() throws IOException {
+        long[][] records = records(5000, 3, false);
+        String direct = new File(tmp, "direct.bin").getPath();
+        try (BinaryRecordWriter writer = BinaryRecordWriter.open(direct, COLUMNS, Integer.BYTES)) {
+            for (int row = 0; row < records.length; row++) {
+                writer.writeRecord(records[row], row % 3 == 0 ? -1 : 1);
+            }
+        }
+        String chunked = new File(tmp, "chunked.bin").getPath();
+        try (BinaryRecordWriter writer = BinaryRecordWriter.open(chunked, COLUMNS, Integer.BYTES)) {
+            for (int start = 0; start < records.length; start += 700) {
+                // Sized for fewer records than written, so the chunk has to grow
+                RecordEncoder chunk = writer.newChunk(10);
+                for (int row = start; row < Math.min(records.length, start + 700); row++) {
+                    chunk.writeRecord(records[row], row % 3 == 0 ? -1 : 1);
+                }
+                writer.append(chunk);
+            }
+        }
+        assertRecords(direct, records, Integer.BYTES);
+        assertRecords(chunked, records, Integer.BYTES);
+    }
+
+    @Test
+    void rejectsOtherFilesAndFieldCounts() throws IOException {
+        assertTrue(BinaryRecordReader.isBinary("stream.bin"));
+        assertFalse(BinaryRecordReader.isBinary("stream.csv"));
+        File csv = new File(tmp, "stream.csv");
+        try (CsvRecordEncoder encoder = CsvRecordEncoder.open(csv.getPath())) {
+            encoder.writeLine("id,a,b,sign");
+            encoder.writeRecord(new long[]{1, 2, 3}, 1);
+        }
+        assertThrows(IOException.class, () -> new BinaryRecordReader(csv.getPath()));
+        try (BinaryRecordWriter writer = BinaryRecordWriter.open(new File(tmp, "short.bin").getPath(), COLUMNS, Integer.BYTES)) {
+            assertThrows(IllegalArgumentException.class, () -> writer.writeRecord(new long[]{1, 2}, 1));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnTableTest {
+    private static final PrimitiveInsertStore.ColumnType[] TYPES = {
+            PrimitiveInsertStore.ColumnType.INTEGER, PrimitiveInsertStore.ColumnType.BIGINT, PrimitiveInsertStore.ColumnType.VARCHAR};
+
+    @TempDir
+    File tmp;
+
+    private ColumnTable read(String csv) throws IOException {
+        File file = new File(tmp, "table.csv");
+        Files.writeString(file.toPath(), csv);
+        return ColumnTable.read(file.getPath(), TYPES);
+    }
+
+    private static String rows(ColumnTable table, String nullText) {
+        StringBuilder out = new StringBuilder();
+        for (int row = 0; row < table.size(); row++) {
+            table.appendRow(row, out, nullText);
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    @Test
+    void readsCsvFields() throws IOException {
+        ColumnTable table = read("id,big,name\n"
+                + "1,10000000000,plain\n"
+                + "-2, 7 ,\"with, comma\"\n"
+                + "3,4,\"say \"\"hi\"\"\"\n"
+                + "4,5,\"\"\n"
+                + "5,,\n"
+                + "6\n"
+                + "\n"
+                + "7,8,Zürich,extra\n");
+        assertEquals(3, table.numColumns());
+        assertEquals(7, table.size());
+        assertEquals("1,10000000000,plain,\n"
+                + "-2,7,\"with, comma\",\n"
+                + "3,4,\"say \"\"hi\"\"\",\n"
+                + "4,5,\"\",\n"
+                + "5,null,null,\n"
+                + "6,null,null,\n"
+                + "7,8,Zürich,\n", rows(table, "null"));
+    }
+
+    @Test
+    void readsItsOwnOutputBack() throws IOException {
+        Random random = new Random(1);
+        String[] names = {"a", "b,c", "\"q\"", "", "é, ü", "x\"y"};
+        StringBuilder csv = new StringBuilder("id,big,name\n");
+        for (int row = 0; row < 3000; row++) {
+            String name = names[random.nextInt(names.length)];
+            csv.append(row).append(',').append(random.nextLong()).append(',')
+                    .append('"').append(name.replace("\"", "\"\"")).append("\"\n");
+        }
+        // More rows than the initial capacity, so the columns grow
+        String written = rows(read(csv.toString()), "");
+        String header = "id,big,name\n";
+        assertEquals(written, rows(read(header + written.replace(",\n", "\n")), ""));
+    }
+
+    @Test
+    void mixSlotsCoverEverySlotWithTheInsertFirst() {
+        for (String mixOrder : new String[]{"shuffle", "permutation"}) {
+            int numResidu = 500;
+            int numNoise = 300;
+            MixSlots slots = new MixSlots(numResidu, numNoise, mixOrder, 4).markDeletes();
+            assertEquals("permutation".equals(mixOrder), slots.isPermutation());
+            assertEquals(numResidu + 2 * numNoise, slots.size());
+            BitSet seen = new BitSet();
+            BitSet inserted = new BitSet();
+            BitSet deleted = new BitSet();
+            for (long position = 0; position < slots.size(); position++) {
+                int slot = slots.slot(position);
+                assertFalse(seen.get(slot));
+                seen.set(slot);
+                if (slots.isResidu(slot)) {
+                    continue;
+                }
+                int noise = slots.noiseRow(slot);
+                if (slots.isInsert(position, slot)) {
+                    assertFalse(inserted.get(noise));
+                    inserted.set(noise);
+                } else {
+                    assertTrue(inserted.get(noise));
+                    deleted.set(noise);
+                }
+            }
+            assertEquals(slots.size(), seen.cardinality());
+            assertEquals(numNoise, inserted.cardinality());
+            assertEquals(numNoise, deleted.cardinality());
+        }
+    }
+
+    @Test
+    void shuffledSlotsFollowMixRecords() {
+        // mixRecords shuffles the slot list with new Random(mixSeed)
+        RecordIdList expected = new RecordIdList(20);
+        expected.addRange(0, 20);
+        expected.shuffle(new Random(9));
+        MixSlots slots = new MixSlots(10, 5, "shuffle", 9);
+        for (int position = 0; position < 20; position++) {
+            assertEquals(expected.get(position), slots.slot(position));
+        }
+        assertThrows(IllegalStateException.class, () -> slots.isInsert(0, slots.slot(0)));
+    }
+}
@@ -0,0 +1,88 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvRecordEncoderTest {
+    @TempDir
+    File tmp;
+
+    // The lines the StringBuilder writers produced before the encoder
+    private static String expectedLine(long[] record, int sign) {
+        StringBuilder line = new StringBuilder();
+        for (long value : record) {
+            line.append(value).append(',');
+        }
+        return line.append(sign).append('\n').toString();
+    }
+
+    private static long[][] records(int count, long seed) {
+        Random random = new Random(seed);
+        long[][] records = new long[count][];
+        for (int i = 0; i < count; i++) {
+            records[i] = new long[]{i, random.nextInt(10000), -random.nextInt(), random.nextLong(), 0};
+        }
+        records[0] = new long[]{Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE, -1, 10};
+        return records;
+    }
+
+    @Test
+    void writesRecordsLikeStringFormatting() throws IOException {
+        File file = new File(tmp, "records.csv");
+        long[][] records = records(1000, 1);
+        StringBuilder expected = new StringBuilder("id,a,b,c,d\n");
+        // A small buffer so records are flushed across buffer boundaries
+        try (CsvRecordEncoder encoder = CsvRecordEncoder.open(file.getPath(), 256)) {
+            encoder.writeLine("id,a,b,c,d");
+            for (int i = 0; i < records.length; i++) {
+                int sign = i % 3 == 0 ? -1 : 1;
+                encoder.writeRecord(records[i], sign);
+                expected.append(expectedLine(records[i], sign));
+            }
+        }
+        assertEquals(expected.toString(), Files.readString(file.toPath()));
+    }
+
+    @Test
+    void writesIntRangesWithSign() throws IOException {
+        File file = new File(tmp, "ints.csv");
+        try (CsvRecordEncoder encoder = CsvRecordEncoder.open(file.getPath())) {
+            encoder.writeRecord(new int[]{7, -3, Integer.MAX_VALUE, 99}, 0, 3, -1);
+            encoder.writeRecord(new int[]{Integer.MIN_VALUE, 0, 5}, 0, 2, 1);
+        }
+        assertEquals("7,-3," + Integer.MAX_VALUE + ",-1\n" + Integer.MIN_VALUE + ",0,1\n", Files.readString(file.toPath()));
+    }
+
+    @Test
+    void appendedChunksEqualDirectWrites() throws IOException {
+        long[][] records = records(5000, 2);
+        File direct = new File(tmp, "direct.csv");
+        try (CsvRecordEncoder encoder = CsvRecordEncoder.open(direct.getPath())) {
+            for (long[] record : records) {
+                encoder.writeRecord(record, 1);
+                encoder.writeRecord(record, -1);
+            }
+        }
+        File chunked = new File(tmp, "chunked.csv");
+        try (CsvRecordEncoder encoder = CsvRecordEncoder.open(chunked.getPath(), 1024)) {
+            for (int start = 0; start < records.length; start += 700) {
+                int end = Math.min(records.length, start + 700);
+                // Sized for fewer records than written, so the chunk has to grow
+                RecordEncoder chunk = encoder.newChunk(10);
+                for (int i = start; i < end; i++) {
+                    chunk.writeRecord(records[i], 1);
+                    chunk.writeRecord(records[i], -1);
+                }
+                encoder.append(chunk);
+            }
+        }
+        assertEquals(Files.readString(direct.toPath()), Files.readString(chunked.toPath()));
+    }
+}
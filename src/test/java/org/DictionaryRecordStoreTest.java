@@ -0,0 +1,57 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DictionaryRecordStoreTest {
+    // Lines as the TPC-DS and CAIDA mixers split them, the last field being the sign
+    private static final String[] LINES = {
+            "0,Mr.,John,Smith,UNITED STATES,1",
+            "1,Dr.,,0,007,-0,1",
+            "2,Mr.,Ann,999999999999999999,1000000000000000000,3.5,1",
+            "3,,,1",
+            "4,1",
+            "5,Mr.,John,Smith,UNITED STATES,+7,\"quoted, field\",1",
+    };
+
+    @Test
+    void writesFieldsBackAsRead() {
+        DictionaryRecordStore store = new DictionaryRecordStore();
+        for (String line : LINES) {
+            store.add(line.split(","));
+        }
+        assertEquals(LINES.length, store.size());
+        StringBuilder out = new StringBuilder();
+        for (int row = 0; row < LINES.length; row++) {
+            String[] fields = LINES[row].split(",");
+            assertEquals(Integer.parseInt(fields[0]), store.getId(row));
+            out.setLength(0);
+            store.append(row, out);
+            // The stored fields end with a comma where the caller appends the sign
+            assertEquals(LINES[row].substring(0, LINES[row].lastIndexOf(',') + 1), out.toString());
+        }
+    }
+
+    @Test
+    void sharesRepeatedStrings() {
+        DictionaryRecordStore store = new DictionaryRecordStore();
+        for (int id = 0; id < 1000; id++) {
+            store.add(new String[]{Integer.toString(id), id % 2 == 0 ? "Mr." : "Ms.", "UNITED STATES", Integer.toString(id * 3), "1"});
+        }
+        assertEquals(3, store.dictionarySize());
+        StringBuilder out = new StringBuilder();
+        store.append(999, out);
+        assertEquals("999,Ms.,UNITED STATES,2997,", out.toString());
+    }
+
+    @Test
+    void rejectsRecordsWithoutAnId() {
+        DictionaryRecordStore store = new DictionaryRecordStore();
+        assertThrows(IllegalArgumentException.class, () -> store.add(new String[]{"1"}));
+        assertThrows(IllegalArgumentException.class, () -> store.add(new String[]{"x", "1"}));
+        assertThrows(IllegalArgumentException.class, () -> store.add(new String[]{"3000000000", "1"}));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getId(0));
+    }
+}
@@ -0,0 +1,91 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExternalShuffleMixerTest {
+    private static final int NUM_RESIDU = 6000;
+    private static final int NUM_NOISE = 2000;
+
+    @TempDir
+    File tmp;
+
+    // Row id, attribute, sign; the attribute is derived from the id so the output can be checked
+    private static int[] row(int id) {
+        return new int[]{id, id * 7 % 1000, 0};
+    }
+
+    private List<String> mix(String name, long seed) throws IOException {
+        File buckets = new File(tmp, "buckets_" + name);
+        ExternalShuffleMixer mixer = new ExternalShuffleMixer(buckets, 256 << 10, NUM_RESIDU + 2L * NUM_NOISE, 3, seed);
+        assertTrue(mixer.getNumBuckets() > 1);
+        for (int id = 0; id < NUM_RESIDU; id++) {
+            mixer.addResidu(row(id));
+        }
+        for (int id = NUM_RESIDU; id < NUM_RESIDU + NUM_NOISE; id++) {
+            mixer.addNoise(row(id));
+        }
+        File stream = new File(tmp, name + ".csv");
+        assertEquals(NUM_RESIDU + 2L * NUM_NOISE, mixer.mix("id,a,sign", stream.getPath()));
+        assertArrayEquals(new String[0], buckets.list());
+        return Files.readAllLines(stream.toPath());
+    }
+
+    @Test
+    void writesEveryRecordWithTheInsertBeforeTheDelete() throws IOException {
+        List<String> lines = mix("stream", 1);
+        assertEquals("id,a,sign", lines.get(0));
+        assertEquals(NUM_RESIDU + 2 * NUM_NOISE + 1, lines.size());
+        int[] seen = new int[NUM_RESIDU + NUM_NOISE];
+        int outOfOrder = 0;
+        for (int i = 1; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split(",");
+            int id = Integer.parseInt(fields[0]);
+            assertEquals(row(id)[1], Integer.parseInt(fields[1]));
+            int sign = Integer.parseInt(fields[2]);
+            if (id < NUM_RESIDU || seen[id] == 0) {
+                assertEquals(1, sign, lines.get(i));
+            } else {
+                assertEquals(-1, sign, lines.get(i));
+            }
+            seen[id]++;
+            if (id != i - 1) {
+                outOfOrder++;
+            }
+        }
+        for (int id = 0; id < seen.length; id++) {
+            assertEquals(id < NUM_RESIDU ? 1 : 2, seen[id]);
+        }
+        assertTrue(outOfOrder > lines.size() / 2);
+    }
+
+    @Test
+    void isFixedBySeed() throws IOException {
+        List<String> first = mix("first", 5);
+        assertEquals(first, mix("second", 5));
+        assertNotEquals(first, mix("other", 6));
+    }
+
+    @Test
+    void rejectsBudgetsTooSmallForTheBuckets() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ExternalShuffleMixer(new File(tmp, "small"), 16 << 10, 100000, 3, 0));
+    }
+
+    @Test
+    void rejectsRowsOfAnotherWidth() {
+        ExternalShuffleMixer mixer = new ExternalShuffleMixer(new File(tmp, "width"), 1 << 20, 10, 3, 0);
+        assertThrows(IllegalArgumentException.class, () -> mixer.addResidu(new int[]{1, 2}));
+    }
+}
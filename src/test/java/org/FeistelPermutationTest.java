@@ -0,0 +1,101 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeistelPermutationTest {
+    @Test
+    void isABijectionWithItsInverse() {
+        // Sizes around powers of two, odd and even bit counts, and the smallest domains
+        for (long size : new long[]{1, 2, 3, 4, 5, 255, 256, 257, 1000, 4097, 100003}) {
+            for (long seed = 0; seed < 3; seed++) {
+                FeistelPermutation permutation = new FeistelPermutation(size, seed);
+                BitSet seen = new BitSet();
+                for (long x = 0; x < size; x++) {
+                    long y = permutation.apply(x);
+                    assertTrue(y >= 0 && y < size);
+                    assertFalse(seen.get((int) y));
+                    seen.set((int) y);
+                    assertEquals(x, permutation.inverse(y));
+                }
+                assertEquals(size, seen.cardinality());
+            }
+        }
+    }
+
+    @Test
+    void isFixedBySeed() {
+        FeistelPermutation a = new FeistelPermutation(1 << 16, 1);
+        FeistelPermutation b = new FeistelPermutation(1 << 16, 2);
+        int same = 0;
+        for (long x = 0; x < 1 << 16; x++) {
+            if (a.apply(x) == b.apply(x)) {
+                same++;
+            }
+        }
+        assertTrue(same < 100, same + " equal values");
+        FeistelPermutation again = new FeistelPermutation(1 << 16, 1);
+        for (long x = 0; x < 1000; x++) {
+            assertEquals(a.apply(x), again.apply(x));
+        }
+    }
+
+    @Test
+    void coversLargeDomains() {
+        long size = (1L << 40) + 12345;
+        FeistelPermutation permutation = new FeistelPermutation(size, 7);
+        for (long x = size - 1000; x < size; x++) {
+            long y = permutation.apply(x);
+            assertTrue(y >= 0 && y < size);
+            assertEquals(x, permutation.inverse(y));
+        }
+    }
+
+    @Test
+    void rejectsValuesOutsideTheDomain() {
+        FeistelPermutation permutation = new FeistelPermutation(10, 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.apply(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> permutation.inverse(-1));
+        assertThrows(IllegalArgumentException.class, () -> new FeistelPermutation(0, 0));
+    }
+
+    @Test
+    void mixOrderPutsEveryInsertBeforeItsDelete() {
+        int numResidu = 1000;
+        int numNoise = 700;
+        PermutedMixOrder order = new PermutedMixOrder(numResidu, numNoise, 3);
+        assertEquals(numResidu + 2 * numNoise, order.size());
+        BitSet slots = new BitSet();
+        BitSet inserted = new BitSet();
+        BitSet deleted = new BitSet();
+        int residu = 0;
+        for (long position = 0; position < order.size(); position++) {
+            long slot = order.slot(position);
+            assertEquals(position, order.position(slot));
+            slots.set((int) slot);
+            if (order.isResidu(slot)) {
+                residu++;
+                continue;
+            }
+            int noise = (int) order.noiseIndex(slot);
+            if (order.isInsert(position, slot)) {
+                assertFalse(inserted.get(noise));
+                inserted.set(noise);
+            } else {
+                assertTrue(inserted.get(noise));
+                assertFalse(deleted.get(noise));
+                deleted.set(noise);
+            }
+        }
+        assertEquals(order.size(), slots.cardinality());
+        assertEquals(numResidu, residu);
+        assertEquals(numNoise, inserted.cardinality());
+        assertEquals(numNoise, deleted.cardinality());
+    }
+}
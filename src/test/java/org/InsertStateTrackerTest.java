@@ -0,0 +1,71 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InsertStateTrackerTest {
+    // Replays random adds and removes against a HashSet<Integer>, the set the mixers used before
+    private static void assertLikeHashSet(InsertStateTracker tracker, int minId, int range, long seed) {
+        Random random = new Random(seed);
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            int id = minId + random.nextInt(range);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(id), tracker.add(id));
+            } else {
+                assertEquals(expected.remove(id), tracker.remove(id));
+            }
+            assertEquals(expected.size(), tracker.size());
+            assertEquals(expected.isEmpty(), tracker.isEmpty());
+        }
+    }
+
+    @Test
+    void denseIdsUseTheBitset() {
+        InsertStateTracker tracker = new InsertStateTracker(1000, 1999, 1000);
+        assertTrue(tracker.isDense());
+        assertLikeHashSet(tracker, 1000, 1000, 1);
+    }
+
+    @Test
+    void sparseIdsUseTheHashSet() {
+        InsertStateTracker tracker = new InsertStateTracker(Integer.MIN_VALUE, Integer.MAX_VALUE, 100);
+        assertFalse(tracker.isDense());
+        assertLikeHashSet(tracker, -50, 100, 2);
+    }
+
+    @Test
+    void secondOccurrenceIsTheDelete() {
+        RecordIdList ids = new RecordIdList(6);
+        ids.addRange(5, 3);
+        ids.duplicate(0);
+        ids.shuffle(new Random(3));
+        InsertStateTracker tracker = InsertStateTracker.forIds(ids, 0, ids.size());
+        assertTrue(tracker.isDense());
+        int inserts = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            if (tracker.add(ids.get(i))) {
+                inserts++;
+            } else {
+                assertTrue(tracker.remove(ids.get(i)));
+            }
+        }
+        assertEquals(3, inserts);
+        assertTrue(tracker.isEmpty());
+    }
+
+    @Test
+    void rejectsIdsOutsideTheDenseRange() {
+        InsertStateTracker tracker = new InsertStateTracker(100, 199, 100);
+        assertThrows(IllegalArgumentException.class, () -> tracker.add(99));
+        assertFalse(InsertStateTracker.forIds(new RecordIdList(0), 0, 0).remove(0));
+    }
+}
@@ -0,0 +1,76 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InterleaveMixerTest {
+    private static final int NUM_RESIDU = 20000;
+    private static final int NUM_NOISE = 10000;
+
+    @TempDir
+    File tmp;
+
+    private List<String> mix(long seed) throws IOException {
+        File stream = new File(tmp, "stream.csv");
+        long written = new InterleaveMixer(seed).mix(LifetimeStreamMixerTest.cursor(0, NUM_RESIDU), NUM_RESIDU,
+                LifetimeStreamMixerTest.cursor(NUM_RESIDU, NUM_RESIDU + NUM_NOISE), NUM_NOISE, "id,a,sign", stream.getPath());
+        List<String> lines = Files.readAllLines(stream.toPath());
+        assertEquals("id,a,sign", lines.get(0));
+        assertEquals(NUM_RESIDU + 2L * NUM_NOISE, written);
+        assertEquals(written + 1, lines.size());
+        return lines.subList(1, lines.size());
+    }
+
+    @Test
+    void spacesCopiesLikeAUniformShuffle() throws IOException {
+        long[] lifetimes = LifetimeStreamMixerTest.lifetimes(mix(1), NUM_RESIDU, NUM_NOISE);
+        // In a uniform shuffle of M slots two copies are M / 3 apart on average
+        double sum = 0;
+        for (long lifetime : lifetimes) {
+            sum += lifetime;
+        }
+        double size = NUM_RESIDU + 2.0 * NUM_NOISE;
+        assertEquals(size / 3, sum / NUM_NOISE, size / 60);
+    }
+
+    @Test
+    void deletesLiveRecordsInRandomOrder() throws IOException {
+        // A FIFO delete order would delete the noise in insert order
+        int previous = -1;
+        int inversions = 0;
+        for (String line : mix(2)) {
+            if (line.endsWith(",-1")) {
+                int id = Integer.parseInt(line.substring(0, line.indexOf(',')));
+                if (id < previous) {
+                    inversions++;
+                }
+                previous = id;
+            }
+        }
+        assertTrue(inversions > NUM_NOISE / 4, inversions + " inversions");
+    }
+
+    @Test
+    void isFixedBySeed() throws IOException {
+        List<String> first = List.copyOf(mix(3));
+        assertEquals(first, mix(3));
+        assertNotEquals(first, mix(4));
+    }
+
+    @Test
+    void rejectsShortInputs() {
+        File stream = new File(tmp, "short.csv");
+        assertThrows(IllegalStateException.class, () -> new InterleaveMixer(5).mix(LifetimeStreamMixerTest.cursor(0, 10), 11,
+                LifetimeStreamMixerTest.cursor(10, 20), 10, "id,a,sign", stream.getPath()));
+    }
+}
@@ -0,0 +1,147 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LifetimeStreamMixerTest {
+    private static final int NUM_RESIDU = 20000;
+    private static final int NUM_NOISE = 5000;
+
+    @TempDir
+    File tmp;
+
+    // Rows id, attribute, sign from ids [from, to), in one array reused between calls like the file cursors
+    static CombinedDataset.RowCursor cursor(int from, int to) {
+        return new CombinedDataset.RowCursor() {
+            private final int[] row = new int[3];
+            private int next = from;
+
+            @Override
+            public int[] next() {
+                if (next == to) {
+                    return null;
+                }
+                row[0] = next;
+                row[1] = next % 17;
+                row[2] = 1;
+                next++;
+                return row;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private List<String> mix(LifetimeStreamMixer mixer, int numNoise) throws IOException {
+        File stream = new File(tmp, "stream.csv");
+        long written = mixer.mix(cursor(0, NUM_RESIDU), NUM_RESIDU, cursor(NUM_RESIDU, NUM_RESIDU + numNoise), numNoise,
+                "id,a,sign", stream.getPath());
+        List<String> lines = Files.readAllLines(stream.toPath());
+        assertEquals("id,a,sign", lines.get(0));
+        assertEquals(NUM_RESIDU + 2L * numNoise, written);
+        assertEquals(written + 1, lines.size());
+        return lines.subList(1, lines.size());
+    }
+
+    /**
+     * Checks that residu and noise inserts come in file order, every noise delete follows its insert,
+     * and returns the lifetime (delete position - insert position) of every noise record.
+     */
+    static long[] lifetimes(List<String> lines, int numResidu, int numNoise) {
+        long[] insertedAt = new long[numNoise];
+        long[] lifetimes = new long[numNoise];
+        int nextResidu = 0;
+        int nextNoise = 0;
+        int deletes = 0;
+        for (int position = 0; position < lines.size(); position++) {
+            String[] fields = lines.get(position).split(",");
+            int id = Integer.parseInt(fields[0]);
+            assertEquals(id % 17, Integer.parseInt(fields[1]));
+            if (id < numResidu) {
+                assertEquals(nextResidu++, id);
+                assertEquals("1", fields[2]);
+            } else if ("1".equals(fields[2])) {
+                assertEquals(numResidu + nextNoise++, id);
+                insertedAt[id - numResidu] = position;
+            } else {
+                assertEquals("-1", fields[2]);
+                assertTrue(id - numResidu < nextNoise, "Delete before insert of " + id);
+                assertEquals(0, lifetimes[id - numResidu], "Second delete of " + id);
+                lifetimes[id - numResidu] = position - insertedAt[id - numResidu];
+                deletes++;
+            }
+        }
+        assertEquals(numResidu, nextResidu);
+        assertEquals(numNoise, nextNoise);
+        assertEquals(numNoise, deletes);
+        return lifetimes;
+    }
+
+    @Test
+    void fixedLifetimesAreASlidingWindow() throws IOException {
+        List<String> lines = mix(new LifetimeStreamMixer("fixed", 100, 1), NUM_NOISE);
+        long[] lifetimes = lifetimes(lines, NUM_RESIDU, NUM_NOISE);
+        // Only the deletes left when the inputs run out are written early
+        int exact = 0;
+        for (long lifetime : lifetimes) {
+            assertTrue(lifetime >= 1 && lifetime <= 100);
+            if (lifetime == 100) {
+                exact++;
+            }
+        }
+        assertTrue(exact > NUM_NOISE - 100, exact + " exact lifetimes");
+    }
+
+    @Test
+    void geometricLifetimesHaveTheMean() throws IOException {
+        long[] lifetimes = lifetimes(mix(new LifetimeStreamMixer("geometric", 50, 2), NUM_NOISE), NUM_RESIDU, NUM_NOISE);
+        double sum = 0;
+        for (long lifetime : lifetimes) {
+            sum += lifetime;
+        }
+        assertEquals(50, sum / NUM_NOISE, 5);
+
+        LifetimeStreamMixer uniform = new LifetimeStreamMixer("uniform", 10, 3);
+        for (int i = 0; i < 10000; i++) {
+            long lifetime = uniform.nextLifetime();
+            assertTrue(lifetime >= 1 && lifetime <= 19);
+        }
+        assertEquals(1, new LifetimeStreamMixer("geometric", 1, 3).nextLifetime());
+    }
+
+    @Test
+    void isFixedBySeed() throws IOException {
+        List<String> first = List.copyOf(mix(new LifetimeStreamMixer("uniform", 30, 4), NUM_NOISE));
+        assertEquals(first, mix(new LifetimeStreamMixer("uniform", 30, 4), NUM_NOISE));
+    }
+
+    @Test
+    void continuesWhenACursorEndsEarly() throws IOException {
+        File stream = new File(tmp, "short.csv");
+        // Fewer noise rows than expected, and no noise at all
+        long written = new LifetimeStreamMixer("geometric", 20, 5).mix(cursor(0, NUM_RESIDU), NUM_RESIDU,
+                cursor(NUM_RESIDU, NUM_RESIDU + 100), NUM_NOISE, "id,a,sign", stream.getPath());
+        assertEquals(NUM_RESIDU + 200, written);
+        List<String> lines = Files.readAllLines(stream.toPath());
+        lifetimes(lines.subList(1, lines.size()), NUM_RESIDU, 100);
+        assertEquals(NUM_RESIDU, new LifetimeStreamMixer("fixed", 1, 5).mix(cursor(0, NUM_RESIDU), NUM_RESIDU,
+                null, 0, "id,a,sign", stream.getPath()));
+    }
+
+    @Test
+    void rejectsUnknownLifetimes() {
+        assertThrows(IllegalArgumentException.class, () -> new LifetimeStreamMixer("normal", 10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new LifetimeStreamMixer("fixed", 0.5, 0));
+    }
+}
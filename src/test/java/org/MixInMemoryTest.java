@@ -0,0 +1,91 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MixInMemoryTest {
+    private static final int SIZE_FACTOR = 6;       // 64 residu records
+    private static final String SUFFIX = "_6.0_9_1.3_0_0.5"; // perc 0.5: 32 noise inserts
+    private static final int NUM_NOISE_ROWS = 40;   // More than perc asks for, like a shared sweep file
+
+    @TempDir
+    File tmp;
+
+    // Split files as the awk script and the splitter write them: records only, sign 1, no header
+    private void writeSplitFiles(boolean header) throws IOException {
+        File folder = new File(tmp, "input/synthFromDisk/" + (double) SIZE_FACTOR + "/0.5");
+        folder.mkdirs();
+        Random random = new Random(1);
+        StringBuilder residu = new StringBuilder(header ? "id,attr1,attr2,attr3,attr4,attr5,attr6,attr7,attr8,attr9,sign\n" : "");
+        StringBuilder noise = new StringBuilder(residu);
+        for (int id = 0; id < 1 << SIZE_FACTOR; id++) {
+            appendRecord(residu, id, random);
+        }
+        for (int k = 0; k < NUM_NOISE_ROWS; k++) {
+            appendRecord(noise, (1 << SIZE_FACTOR) + k, random);
+        }
+        Files.writeString(new File(folder, "residu" + SUFFIX + ".csv").toPath(), residu);
+        Files.writeString(new File(folder, "noise_inserts" + SUFFIX + ".csv").toPath(), noise);
+    }
+
+    private static void appendRecord(StringBuilder out, int id, Random random) {
+        out.append(id);
+        for (int a = 0; a < 9; a++) {
+            out.append(',').append(random.nextInt(1000));
+        }
+        out.append(",1\n");
+    }
+
+    private Config config(String mixOrder) {
+        Config config = new Config();
+        config.readFolder = tmp.getPath() + "/";
+        config.sizeFactor = SIZE_FACTOR;
+        config.numZipfAttributes = 9;
+        config.mixOrder = mixOrder;
+        config.mixSeed = 7;
+        return config;
+    }
+
+    private String mix(Config config) throws IOException {
+        new MixInMemory(config);
+        return Files.readString(new File(tmp, "input/synthFromDisk/" + (double) SIZE_FACTOR
+                + "/final_stream_spread_out" + SUFFIX + ".csv").toPath());
+    }
+
+    @Test
+    void sortMergeWritesTheInMemoryPermutation() throws IOException {
+        for (boolean header : new boolean[]{false, true}) {
+            writeSplitFiles(header);
+            String inMemory = mix(config("permutation"));
+            Config sortMerge = config("permutation");
+            sortMerge.mixMemoryBudgetMB = 1;
+            assertEquals(inMemory, mix(sortMerge));
+            // Every residu record, the first 32 noise records twice, all columns
+            assertEquals(1 + 64 + 2 * 32, inMemory.split("\n").length);
+            assertEquals(0, inMemory.indexOf("id,attr1,attr2,attr3,attr4,attr5,attr6,attr7,attr8,attr9,sign\n"));
+            for (String line : inMemory.split("\n")) {
+                assertEquals(11, line.split(",").length, line);
+            }
+        }
+    }
+
+    @Test
+    void parallelMixEqualsTheSequentialLoop() throws IOException {
+        writeSplitFiles(false);
+        // The sequential loop signs shuffled noise with the seen tracker, the parallel one by marked delete positions
+        for (String mixOrder : new String[]{"shuffle", "permutation"}) {
+            String sequential = mix(config(mixOrder));
+            Config parallel = config(mixOrder);
+            parallel.parallelMix = true;
+            parallel.numThreads = 4;
+            assertEquals(sequential, mix(parallel));
+        }
+    }
+}
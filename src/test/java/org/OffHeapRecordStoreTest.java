@@ -0,0 +1,50 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapRecordStoreTest {
+    @Test
+    void returnsTheRecordsAdded() {
+        Random random = new Random(1);
+        // More rows than the first segment holds, so it has to grow
+        int[][] records = new int[10000][];
+        OffHeapRecordStore store = new OffHeapRecordStore();
+        assertTrue(store.isEmpty());
+        for (int row = 0; row < records.length; row++) {
+            records[row] = new int[]{row, random.nextInt(), Integer.MIN_VALUE + row, Integer.MAX_VALUE - row};
+            store.add(records[row]);
+        }
+        int stored = records[0][1];
+        records[0][1] = stored + 1; // The store keeps a copy, not the array
+        assertEquals(stored, store.getInt(0, 1));
+        records[0][1] = stored;
+        assertEquals(records.length, store.size());
+        assertEquals(4, store.getStride());
+        int[] out = new int[5];
+        for (int row = 0; row < records.length; row++) {
+            store.get(row, out);
+            for (int column = 0; column < 4; column++) {
+                assertEquals(records[row][column], out[column]);
+                assertEquals(records[row][column], store.getInt(row, column));
+            }
+        }
+    }
+
+    @Test
+    void rejectsOtherStridesAndRows() {
+        OffHeapRecordStore store = new OffHeapRecordStore();
+        assertThrows(IllegalArgumentException.class, () -> store.add(new int[0]));
+        store.add(new int[]{1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> store.add(new int[]{1, 2}));
+        assertArrayEquals(new int[]{1, 2, 3}, store.get(0, new int[3]));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(1, new int[3]));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getInt(0, 3));
+    }
+}
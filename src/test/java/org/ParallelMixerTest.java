@@ -0,0 +1,56 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ParallelMixerTest {
+    @TempDir
+    File tmp;
+
+    // A formatter whose lines depend only on the position, with a scratch buffer that must not be shared
+    private static ParallelMixer.RecordFormatter formatter() {
+        int[] scratch = new int[1];
+        return (position, out) -> {
+            scratch[0] = (int) (position * 31 % 1000);
+            out.append(position).append(',').append(scratch[0]).append(",é\n");
+        };
+    }
+
+    private static String sequential(long numRecords) {
+        StringBuilder out = new StringBuilder("id,a,s\n");
+        ParallelMixer.RecordFormatter formatter = formatter();
+        for (long position = 0; position < numRecords; position++) {
+            formatter.format(position, out);
+        }
+        return out.toString();
+    }
+
+    @Test
+    void segmentsConcatenateToTheSequentialStream() throws IOException {
+        File stream = new File(tmp, "stream.csv");
+        for (int numThreads : new int[]{1, 2, 3, 8}) {
+            for (long numRecords : new long[]{0, 1, 5, 100000}) {
+                new ParallelMixer(new File(tmp, "segments"), numThreads).write("id,a,s\n", numRecords, ParallelMixerTest::formatter, stream.getPath());
+                assertEquals(sequential(numRecords), Files.readString(stream.toPath()), numThreads + " threads, " + numRecords + " records");
+            }
+        }
+        String[] left = new File(tmp, "segments").list();
+        assertArrayEquals(new String[0], left == null ? new String[0] : left);
+    }
+
+    @Test
+    void oneSegmentIsWrittenDirectly() throws IOException {
+        File stream = new File(tmp, "stream.csv");
+        new ParallelMixer(new File(tmp, "segments"), 1).write("id,a,s\n", 1000, ParallelMixerTest::formatter, stream.getPath());
+        assertEquals(sequential(1000), Files.readString(stream.toPath()));
+        assertFalse(new File(tmp, "segments").exists());
+    }
+}
@@ -0,0 +1,103 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class PointQueryIndexTest {
+    static final int NUM_ATTRS = 4;
+
+    /**
+     * (id, attrs..., sign) records where value 0 is common and the values up to 49 are rare.
+     */
+    static long[][] records(Random random, int numRecords) {
+        long[][] records = new long[numRecords][];
+        for (int i = 0; i < numRecords; i++) {
+            long[] record = new long[NUM_ATTRS + 2];
+            record[0] = i;
+            for (int j = 0; j < NUM_ATTRS; j++) {
+                record[j + 1] = random.nextInt(3) == 0 ? random.nextInt(50) : 0;
+            }
+            record[NUM_ATTRS + 1] = 1;
+            records[i] = record;
+        }
+        return records;
+    }
+
+    /**
+     * Queries taken from records with some attributes left unconstrained, plus one without any
+     * constraint and one on a value that does not occur.
+     */
+    static long[][] queries(Random random, long[][] records, int numQueries) {
+        long[][] queries = new long[numQueries][];
+        for (int q = 0; q < numQueries; q++) {
+            long[] record = records[random.nextInt(records.length)];
+            long[] query = new long[NUM_ATTRS];
+            for (int j = 0; j < NUM_ATTRS; j++) {
+                query[j] = random.nextBoolean() ? record[j + 1] : -1;
+            }
+            queries[q] = query;
+        }
+        queries[0] = new long[]{-1, -1, -1, -1};
+        queries[1] = new long[]{-1, 99, 0, -1};
+        return queries;
+    }
+
+    /**
+     * The scan the indexes replace: it stops at the first mismatch, so the union only counts
+     * records whose first constrained attribute matches.
+     */
+    static int[][] scan(long[][] queries, long[][] records) {
+        int[] answers = new int[queries.length];
+        int[] union = new int[queries.length];
+        for (long[] record : records) {
+            for (int q = 0; q < queries.length; q++) {
+                boolean match = true;
+                boolean unionMatch = false;
+                for (int j = 0; j < NUM_ATTRS; j++) {
+                    if (queries[q][j] != -1 && queries[q][j] != record[j + 1]) {
+                        match = false;
+                        break;
+                    }
+                    if (queries[q][j] != -1) {
+                        unionMatch = true;
+                    }
+                }
+                if (match) {
+                    answers[q]++;
+                }
+                if (unionMatch) {
+                    union[q]++;
+                }
+            }
+        }
+        return new int[][]{answers, union};
+    }
+
+    @Test
+    void countsWhatTheScanCounts() {
+        Random random = new Random(3);
+        long[][] records = records(random, 5000);
+        long[][] queries = queries(random, records, 200);
+        int[][] expected = scan(queries, records);
+
+        PointQueryIndex index = new PointQueryIndex(queries, NUM_ATTRS);
+        for (long[] record : records) {
+            index.add(record);
+        }
+        assertArrayEquals(expected[0], index.getAnswers());
+        assertArrayEquals(expected[1], index.getUnion());
+
+        // Counting halves separately and adding them up gives the same counts
+        PointQueryIndex total = new PointQueryIndex(queries, NUM_ATTRS);
+        PointQueryIndex half = total.newCounter();
+        for (int i = 0; i < records.length; i++) {
+            (i < records.length / 2 ? total : half).add(records[i]);
+        }
+        total.addCounts(half);
+        assertArrayEquals(expected[0], total.getAnswers());
+        assertArrayEquals(expected[1], total.getUnion());
+    }
+}
@@ -0,0 +1,114 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PositionBitmapIndexTest {
+    @TempDir
+    File tmp;
+
+    @Test
+    void answersWhatTheScanCounts() throws IOException {
+        Random random = new Random(5);
+        long[][] records = PointQueryIndexTest.records(random, 5000);
+        long[][] queries = PointQueryIndexTest.queries(random, records, 200);
+        int[][] expected = PointQueryIndexTest.scan(queries, records);
+
+        PositionBitmapIndex index = new PositionBitmapIndex(PointQueryIndexTest.NUM_ATTRS);
+        for (long[] record : records) {
+            index.add(record);
+        }
+        // The same records added as chunks of uneven size
+        PositionBitmapIndex appended = new PositionBitmapIndex(PointQueryIndexTest.NUM_ATTRS);
+        for (int start = 0; start < records.length; ) {
+            int end = Math.min(records.length, start + 1 + random.nextInt(1500));
+            PositionBitmapIndex chunk = new PositionBitmapIndex(PointQueryIndexTest.NUM_ATTRS);
+            for (int i = start; i < end; i++) {
+                chunk.add(records[i]);
+            }
+            appended.append(chunk);
+            start = end;
+        }
+        File file = new File(tmp, "index.bin");
+        index.write(file);
+        PositionBitmapIndex read = PositionBitmapIndex.read(file);
+
+        for (PositionBitmapIndex built : new PositionBitmapIndex[]{index, appended, read}) {
+            assertEquals(records.length, built.getNumRecords());
+            for (int q = 0; q < queries.length; q++) {
+                assertEquals(expected[0][q], built.answer(queries[q]), "answer of query " + q);
+                assertEquals(expected[1][q], built.union(queries[q]), "union of query " + q);
+            }
+            long[] attrs = new long[PointQueryIndexTest.NUM_ATTRS];
+            for (int i = 0; i < records.length; i += 97) {
+                built.readRecord(i, attrs);
+                assertArrayEquals(Arrays.copyOfRange(records[i], 1, attrs.length + 1), attrs);
+            }
+        }
+    }
+
+    @Test
+    void bitmapRoundTripsAcrossTheSwitchToBitset() throws IOException {
+        PositionBitmap bitmap = new PositionBitmap();
+        int[] positions = new int[3000];
+        // Sparse first, so the bitmap starts as an array and turns into a bitset once dense
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i < 100 ? i * 100 : 10000 + i;
+        }
+        boolean sawArray = false;
+        boolean sawBitset = false;
+        for (int i = 0; i < positions.length; i++) {
+            bitmap.add(positions[i]);
+            if (i % 50 != 0 && i != positions.length - 1) {
+                continue;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bitmap.write(new DataOutputStream(bytes));
+            // The first byte is the bitmap type, 0 for an array and 1 for a bitset
+            byte type = bytes.toByteArray()[0];
+            sawArray |= type == 0;
+            sawBitset |= type == 1;
+            PositionBitmap read = PositionBitmap.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(i + 1, read.getCardinality());
+            for (int k = 0; k <= i; k++) {
+                assertTrue(read.contains(positions[k]));
+            }
+            assertFalse(read.contains(positions[i] + 1));
+            assertFalse(read.contains(1));
+            // A bitmap read back only takes positions after its last one
+            assertThrows(IllegalArgumentException.class, () -> read.add(positions[0]));
+            read.add(positions[i] + 1);
+            assertEquals(i + 2, read.getCardinality());
+        }
+        assertTrue(sawArray);
+        assertTrue(sawBitset);
+    }
+
+    @Test
+    void bitsetRejectsRepeatedAndEarlierPositions() {
+        PositionBitmap bitmap = new PositionBitmap();
+        for (int position = 0; position < 1000; position++) {
+            bitmap.add(position);
+        }
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(999));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(500));
+        assertEquals(1000, bitmap.getCardinality());
+        bitmap.add(1000);
+        assertEquals(1001, bitmap.getCardinality());
+    }
+}
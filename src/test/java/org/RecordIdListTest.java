@@ -0,0 +1,47 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecordIdListTest {
+    @Test
+    void shufflesLikeCollectionsShuffle() {
+        for (long seed = 0; seed < 5; seed++) {
+            RecordIdList ids = new RecordIdList(10);
+            List<Integer> expected = new ArrayList<>();
+            ids.addRange(0, 1000);
+            ids.duplicate(600);
+            for (int i = 0; i < 1000; i++) {
+                expected.add(i);
+            }
+            expected.addAll(new ArrayList<>(expected.subList(600, 1000)));
+            ids.shuffle(new Random(seed));
+            Collections.shuffle(expected, new Random(seed));
+            assertEquals(expected.size(), ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(expected.get(i), ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    void growsPastTheExpectedSize() {
+        RecordIdList ids = new RecordIdList(0);
+        for (int i = 0; i < 100; i++) {
+            ids.add(-i);
+        }
+        ids.duplicate(90);
+        assertEquals(110, ids.size());
+        assertEquals(-99, ids.get(99));
+        assertEquals(-90, ids.get(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> ids.get(110));
+        assertThrows(IllegalArgumentException.class, () -> new RecordIdList(Integer.MAX_VALUE));
+    }
+}
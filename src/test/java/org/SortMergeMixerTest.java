@@ -0,0 +1,62 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SortMergeMixerTest {
+    @TempDir
+    File tmp;
+
+    private static int[] row(int id) {
+        return new int[]{id, id % 13, -id, 0};
+    }
+
+    private static String line(int[] row, int sign) {
+        return row[0] + "," + row[1] + "," + row[2] + "," + sign + "\n";
+    }
+
+    @Test
+    void writesThePermutedMixOrder() throws IOException {
+        int numResidu = 5000;
+        int numNoise = 1500;
+        long seed = 11;
+        SortMergeMixer mixer = new SortMergeMixer(new File(tmp, "buckets"), 256 << 10, numResidu, numNoise, 4, seed);
+        for (int id = 0; id < numResidu; id++) {
+            mixer.addResidu(row(id));
+        }
+        for (int k = 0; k < numNoise; k++) {
+            mixer.addNoise(row(numResidu + k));
+        }
+        File stream = new File(tmp, "stream.csv");
+        mixer.mix("id,a,b,sign", stream.getPath());
+
+        PermutedMixOrder order = new PermutedMixOrder(numResidu, numNoise, seed);
+        StringBuilder expected = new StringBuilder("id,a,b,sign\n");
+        for (long position = 0; position < order.size(); position++) {
+            long slot = order.slot(position);
+            if (order.isResidu(slot)) {
+                expected.append(line(row((int) slot), 1));
+            } else {
+                expected.append(line(row(numResidu + (int) order.noiseIndex(slot)), order.isInsert(position, slot) ? 1 : -1));
+            }
+        }
+        assertEquals(expected.toString(), Files.readString(stream.toPath()));
+    }
+
+    @Test
+    void rejectsMissingAndExtraRecords() throws IOException {
+        SortMergeMixer mixer = new SortMergeMixer(new File(tmp, "count"), 1 << 20, 1, 1, 4, 0);
+        mixer.addResidu(row(0));
+        assertThrows(IllegalStateException.class, () -> mixer.addResidu(row(1)));
+        assertThrows(IllegalStateException.class, () -> mixer.mix("id,a,b,sign", new File(tmp, "count.csv").getPath()));
+        mixer.addNoise(row(1));
+        assertThrows(IllegalStateException.class, () -> mixer.addNoise(row(2)));
+    }
+}
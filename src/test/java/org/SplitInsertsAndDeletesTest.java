@@ -0,0 +1,133 @@
+package org;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SplitInsertsAndDeletesTest {
+    // residu size 2^3 = 8
+    private static final String BASE_NAME = "synth_2_100_3.0_8_1_0.5_1_0.5";
+    private static final String SUFFIX = "_3.0_1_0.5_1_0.5";
+
+    @TempDir
+    File tmp;
+
+    private static double numericPrefix(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return SplitInsertsAndDeletes.numericPrefix(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static SplitInsertsAndDeletes splitter(int chunkBytes) {
+        Config config = new Config();
+        config.numThreads = 4;
+        config.splitChunkBytes = chunkBytes;
+        return new SplitInsertsAndDeletes(config);
+    }
+
+    private String read(String kind, String extension) throws IOException {
+        return Files.readString(new File(tmp, "split_sets/" + kind + SUFFIX + extension).toPath());
+    }
+
+    @Test
+    void convertsFieldsLikeAwk() {
+        assertEquals(12, numericPrefix("12"));
+        assertEquals(-1, numericPrefix("-1"));
+        assertEquals(1, numericPrefix("+1"));
+        assertEquals(7, numericPrefix("  7abc"));
+        assertEquals(-1, numericPrefix("-1\r"));
+        assertEquals(1.5, numericPrefix("1.5x"));
+        assertEquals(100, numericPrefix("1e2"));
+        assertEquals(1, numericPrefix("1e"));
+        assertEquals(1.2, numericPrefix("1.2.3"));
+        assertEquals(0, numericPrefix("sign"));
+        assertEquals(0, numericPrefix(""));
+        assertEquals(0, numericPrefix("-"));
+    }
+
+    @Test
+    void splitsCsvLikeTheAwkScript() throws IOException {
+        Random random = new Random(1);
+        StringBuilder input = new StringBuilder("id,a,sign\n");
+        StringBuilder residu = new StringBuilder();
+        StringBuilder inserts = new StringBuilder();
+        StringBuilder deletes = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(16);
+            int sign = random.nextInt(3) == 0 ? -1 : 1;
+            String line = id + "," + random.nextInt(1000) + "," + sign + "\n";
+            input.append(line);
+            (sign == -1 ? deletes : id < 8 ? residu : inserts).append(line);
+        }
+        // Lines awk drops (sign 0) or converts: a blank line, "+1", a fraction, a CR, an unterminated last line
+        input.append("\n3,5,0\n");
+        input.append("4,5,+1\n");
+        residu.append("4,5,+1\n");
+        input.append("7.5,5,1\n");
+        residu.append("7.5,5,1\n");
+        input.append("8,5,1\r\n");
+        inserts.append("8,5,1\r\n");
+        input.append("9,5,-1");
+        deletes.append("9,5,-1\n");
+        File inputFile = new File(tmp, BASE_NAME + ".csv");
+        Files.writeString(inputFile.toPath(), input);
+
+        // Small chunks, so lines of every kind meet at chunk boundaries
+        splitter(100).split(inputFile);
+        assertEquals(residu.toString(), read("residu", ".csv"));
+        assertEquals(inserts.toString(), read("noise_inserts", ".csv"));
+        assertEquals(deletes.toString(), read("noise_deletes", ".csv"));
+
+        splitter(1 << 20).split(inputFile);
+        assertEquals(residu.toString(), read("residu", ".csv"));
+        assertEquals(inserts.toString(), read("noise_inserts", ".csv"));
+        assertEquals(deletes.toString(), read("noise_deletes", ".csv"));
+    }
+
+    @Test
+    void createsOutputsOnlyForLinesWritten() throws IOException {
+        File inputFile = new File(tmp, BASE_NAME + ".csv");
+        Files.writeString(inputFile.toPath(), "id,a,sign\n1,2,1\n9,2,1\n");
+        splitter(8).split(inputFile);
+        assertEquals("1,2,1\n", read("residu", ".csv"));
+        assertEquals("9,2,1\n", read("noise_inserts", ".csv"));
+        assertFalse(new File(tmp, "split_sets/noise_deletes" + SUFFIX + ".csv").exists());
+    }
+
+    @Test
+    void splitsBinaryLikeCsv() throws IOException {
+        String[] columns = {"id", "a", "sign"};
+        long[][] records = {{1, 5, 1}, {9, 6, 1}, {9, 6, -1}, {7, 8, 1}, {3, 3, 0}, {12, 1, 1}};
+        File inputFile = new File(tmp, BASE_NAME + ".bin");
+        try (BinaryRecordWriter writer = BinaryRecordWriter.open(inputFile.getPath(), columns, Integer.BYTES)) {
+            for (long[] record : records) {
+                writer.writeFields(record);
+            }
+        }
+        splitter(1 << 20).split(inputFile);
+        assertBinary("residu", records[0], records[3]);
+        assertBinary("noise_inserts", records[1], records[5]);
+        assertBinary("noise_deletes", records[2]);
+    }
+
+    private void assertBinary(String kind, long[]... expected) throws IOException {
+        try (BinaryRecordReader reader = new BinaryRecordReader(new File(tmp, "split_sets/" + kind + SUFFIX + ".bin").getPath())) {
+            assertEquals(expected.length, reader.getRecordCount());
+            long[] record = new long[reader.getNumFields()];
+            for (int row = 0; row < expected.length; row++) {
+                reader.readRecord(row, record);
+                for (int field = 0; field < record.length; field++) {
+                    assertEquals(expected[row][field], record[field]);
+                }
+            }
+        }
+    }
+}